@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the binding with the gc profiler, so every result reports the allocation
+ * rate (gc.alloc.rate.norm) next to the throughput. Accepts the usual JMH command line, e.g.
+ * java -jar target/benchmarks.jar Publish -p items=1000
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the getInstant and getEnergy responses: the former JsonParser tree built from the
+ * response read line by line, against the streaming {@link EfergyEngageResponseDecoder}.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EfergyEngageDecodeBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] instant =
+            "{\"reading\":1234,\"last_reading_time\":1480000000000,\"status\":\"ok\"}".getBytes(UTF_8);
+    private final byte[] energy =
+            "{\"sum\":\"12.34\",\"duration\":86400,\"units\":\"kWh\"}".getBytes(UTF_8);
+
+    @Benchmark
+    public EfergyEngageMeasurement instantTree() throws IOException {
+        JsonObject jobject = new JsonParser().parse(readBody(new ByteArrayInputStream(instant))).getAsJsonObject();
+        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
+        if (jobject != null && jobject.get("reading") != null) {
+            measurement.setValue(jobject.get("reading").getAsInt());
+            measurement.setMilis(jobject.get("last_reading_time").getAsLong());
+        }
+        return measurement;
+    }
+
+    @Benchmark
+    public EfergyEngageMeasurement instantStreaming() throws IOException {
+        return EfergyEngageResponseDecoder.INSTANT.handle(new ByteArrayInputStream(instant));
+    }
+
+    @Benchmark
+    public EfergyEngageMeasurement energyTree() throws IOException {
+        JsonObject jobject = new JsonParser().parse(readBody(new ByteArrayInputStream(energy))).getAsJsonObject();
+        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
+        if (jobject != null && jobject.get("sum") != null) {
+            measurement.setValue(jobject.get("sum").getAsFloat());
+            measurement.setUnit(jobject.get("units").getAsString());
+        }
+        return measurement;
+    }
+
+    @Benchmark
+    public EfergyEngageMeasurement energyStreaming() throws IOException {
+        return EfergyEngageResponseDecoder.ENERGY.handle(new ByteArrayInputStream(energy));
+    }
+
+    private static String readBody(InputStream response) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(response));
+        StringBuilder body = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            body.append(line + "\n");
+        }
+        return body.toString();
+    }
+}
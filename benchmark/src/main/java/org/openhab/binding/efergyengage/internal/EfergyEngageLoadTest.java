@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.events.EventPublisher;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load test driving the binding against the {@link EfergyEngageSimulator}. It runs refresh cycles
+ * at a fixed rate and reports cycle latency percentiles, errors and allocation of the binding threads.
+ * Run with key=value arguments, e.g.
+ * cycles=500 rate=20 items=10 latency=20 jitter=30 errorRate=0.05 malformedRate=0.01 tokenExpiry=5000
+ * The {@link Report} is logged at info level.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(EfergyEngageLoadTest.class);
+
+    /**
+     * Outcome of a load test run.
+     */
+    public static class Report {
+        private final int cycles;
+        private final long elapsed;
+        private final long requests;
+        private final int logins;
+        private final long updates;
+        private final long[] latencies;
+        private final long allocated;
+
+        Report(int cycles, long elapsed, long requests, int logins, long updates, long[] latencies, long allocated) {
+            this.cycles = cycles;
+            this.elapsed = elapsed;
+            this.requests = requests;
+            this.logins = logins;
+            this.updates = updates;
+            this.latencies = latencies.clone();
+            this.allocated = allocated;
+            Arrays.sort(this.latencies);
+        }
+
+        public int getCycles() {
+            return cycles;
+        }
+
+        /**
+         * @return duration of the run in ns
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public int getLogins() {
+            return logins;
+        }
+
+        public long getUpdates() {
+            return updates;
+        }
+
+        /**
+         * @return cycle latency at the percentile in ns
+         */
+        public long getLatency(int percentile) {
+            int index = Math.min(latencies.length - 1,
+                    Math.max(0, (int) Math.ceil(percentile / 100.0 * latencies.length) - 1));
+            return latencies[index];
+        }
+
+        /**
+         * @return bytes allocated by the binding threads, -1 if the JVM cannot tell
+         */
+        public long getAllocated() {
+            return allocated;
+        }
+
+        @Override
+        public String toString() {
+            return "cycles: " + cycles + " in " + elapsed / 1000000 + " ms"
+                    + ", requests: " + requests + ", logins: " + logins + ", item updates: " + updates
+                    + ", cycle latency ms p50: " + millis(50) + " p90: " + millis(90) + " p99: " + millis(99)
+                    + " max: " + millis(100)
+                    + (allocated >= 0 ? ", allocated by binding threads: " + allocated / 1024 + " KiB, "
+                    + allocated / Math.max(1, cycles) + " bytes/cycle" : "");
+        }
+
+        private String millis(int percentile) {
+            return String.format("%.1f", getLatency(percentile) / 1000000.0);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                options.put(arg.substring(0, equals), arg.substring(equals + 1));
+            }
+        }
+        logger.info("Efergy Engage load test {}", run(options));
+    }
+
+    /**
+     * Runs the load test with the options given as on the command line, missing ones take their defaults.
+     */
+    public static Report run(Map<String, String> options) throws Exception {
+        int cycles = Integer.parseInt(option(options, "cycles", "200"));
+        int rate = Integer.parseInt(option(options, "rate", "10"));
+        int items = Integer.parseInt(option(options, "items", "4"));
+
+        EfergyEngageSimulator simulator = new EfergyEngageSimulator();
+        simulator.setLatency(Long.parseLong(option(options, "latency", "20")),
+                Long.parseLong(option(options, "jitter", "20")));
+        simulator.setErrorRate(Double.parseDouble(option(options, "errorRate", "0")));
+        simulator.setMalformedRate(Double.parseDouble(option(options, "malformedRate", "0")));
+        simulator.setTokenExpiry(Long.parseLong(option(options, "tokenExpiry", "0")));
+        String url = simulator.start(0);
+
+        try {
+            final AtomicLong updates = new AtomicLong();
+            EfergyEngageBinding binding = new EfergyEngageBinding();
+            binding.setEventPublisher(new EventPublisher() {
+                @Override
+                public void sendCommand(String itemName, Command command) {
+                }
+
+                @Override
+                public void postCommand(String itemName, Command command) {
+                }
+
+                @Override
+                public void postUpdate(String itemName, State newState) {
+                    updates.incrementAndGet();
+                }
+            });
+
+            EfergyEngageGenericBindingProvider provider = new EfergyEngageGenericBindingProvider();
+            for (int i = 0; i < items; i++) {
+                provider.processBindingConfiguration("loadtest", new NumberItem("Instant" + i),
+                        EfergyEngageBindingType.INSTANT.getType());
+                provider.processBindingConfiguration("loadtest", new StringItem("DayTotal" + i),
+                        EfergyEngageBindingType.DAY_TOTAL.getType());
+            }
+            binding.addBindingProvider(provider);
+
+            //no caching, every cycle goes to the simulator
+            Map<String, Object> configuration = new HashMap<>();
+            configuration.put("url", url);
+            configuration.put("email", "loadtest@example.com");
+            configuration.put("password", "loadtest");
+            for (EfergyEngageBindingType type : EfergyEngageBindingType.values()) {
+                configuration.put("ttl." + type.getType(), "0");
+            }
+            binding.activate(null, configuration);
+
+            long period = 1000000000L / Math.max(1, rate);
+            long[] latencies = new long[cycles];
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < cycles; i++) {
+                long cycleStart = System.nanoTime();
+                binding.execute();
+                for (EfergyEngageAccount account : binding.getAccounts()) {
+                    while (account.isBusy()) {
+                        Thread.sleep(1);
+                    }
+                }
+                latencies[i] = System.nanoTime() - cycleStart;
+                long wait = start + (i + 1) * period - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            allocated = allocatedBytes() - allocated;
+
+            binding.deactivate(0);
+
+            return new Report(cycles, elapsed, simulator.getRequestCount(), simulator.getLoginCount(), updates.get(),
+                    latencies, allocated);
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+        return options.containsKey(key) ? options.get(key) : defaultValue;
+    }
+
+    /**
+     * Sums the bytes allocated by the main thread and the threads of the binding. Uses the
+     * com.sun.management extension when the JVM provides it, returns -1 otherwise.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try {
+            Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes",
+                    long[].class);
+            long total = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread == Thread.currentThread() || thread.getName().startsWith("EfergyEngage")) {
+                    long[] bytes = (long[]) method.invoke(threads, new long[] { thread.getId() });
+                    total += Math.max(0, bytes[0]);
+                }
+            }
+            return total;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.model.item.binding.BindingConfigParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding lookups of the generic binding provider: the type of a single item and the items routed
+ * to an account and type.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EfergyEngageLookupBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    private int items;
+
+    private EfergyEngageGenericBindingProvider provider;
+    private String[] itemNames;
+    private int next;
+
+    @Setup
+    public void setUp() throws BindingConfigParseException {
+        provider = createProvider(items);
+        itemNames = provider.getItemNames().toArray(new String[0]);
+    }
+
+    @Benchmark
+    public EfergyEngageBindingType itemType() {
+        next = (next + 1) % itemNames.length;
+        return provider.getItemType(itemNames[next]);
+    }
+
+    @Benchmark
+    public String[] itemNames() {
+        return provider.getItemNames(EfergyEngageConstants.DEFAULT_ACCOUNT, EfergyEngageBindingType.INSTANT);
+    }
+
+    /**
+     * Creates a provider with the given number of items, split between instant, daytotal and instantavg bindings.
+     */
+    static EfergyEngageGenericBindingProvider createProvider(int items) throws BindingConfigParseException {
+        EfergyEngageGenericBindingProvider provider = new EfergyEngageGenericBindingProvider();
+        for (int i = 0; i < items; i++) {
+            switch (i % 3) {
+                case 0:
+                    provider.processBindingConfiguration("benchmark", new NumberItem("Instant" + i), "instant");
+                    break;
+                case 1:
+                    provider.processBindingConfiguration("benchmark", new StringItem("DayTotal" + i), "daytotal");
+                    break;
+                default:
+                    provider.processBindingConfiguration("benchmark", new NumberItem("InstantAvg" + i), "instantavg:1h");
+                    break;
+            }
+        }
+        return provider;
+    }
+}
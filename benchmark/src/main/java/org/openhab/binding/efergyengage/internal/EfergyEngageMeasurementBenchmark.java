@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of {@link EfergyEngageMeasurement}, as done once per endpoint and refresh.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EfergyEngageMeasurementBenchmark {
+
+    private float value = 1234;
+    private long milis = 1480000000000L;
+
+    @Benchmark
+    public EfergyEngageMeasurement instant() {
+        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
+        measurement.setValue(value);
+        measurement.setMilis(milis);
+        return measurement;
+    }
+
+    @Benchmark
+    public EfergyEngageMeasurement energy() {
+        return new EfergyEngageMeasurement(value, "kWh");
+    }
+}
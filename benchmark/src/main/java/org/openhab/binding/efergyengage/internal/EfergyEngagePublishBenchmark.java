@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+import org.openhab.core.events.EventPublisher;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.model.item.binding.BindingConfigParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posting of one refresh cycle to the items: routing, diffing against the last published values and
+ * building the states. Items are split between instant, daytotal and instantavg bindings.
+ * changed posts every item, unchanged only diffs as the values repeat. The account reads from a local
+ * {@link EfergyEngageSimulator}, so the poll started by activate never reaches the Efergy servers.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EfergyEngagePublishBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    private int items;
+
+    private EfergyEngageSimulator simulator;
+    private EfergyEngageBinding binding;
+    private EfergyEngageAccount account;
+    private Map<EfergyEngageBindingType, EfergyEngageMeasurement> first;
+    private Map<EfergyEngageBindingType, EfergyEngageMeasurement> second;
+    private Blackhole blackhole;
+    private boolean toggle;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) throws BindingConfigParseException, IOException {
+        this.blackhole = blackhole;
+        simulator = new EfergyEngageSimulator();
+        String url = simulator.start(0);
+        binding = new EfergyEngageBinding();
+        binding.setEventPublisher(new EventPublisher() {
+            @Override
+            public void sendCommand(String itemName, Command command) {
+            }
+
+            @Override
+            public void postCommand(String itemName, Command command) {
+            }
+
+            @Override
+            public void postUpdate(String itemName, State newState) {
+                blackhole.consume(newState);
+            }
+        });
+        binding.addBindingProvider(EfergyEngageLookupBenchmark.createProvider(items));
+
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("url", url);
+        configuration.put("email", "benchmark@example.com");
+        configuration.put("password", "benchmark");
+        binding.activate(null, configuration);
+        account = binding.getAccounts().iterator().next();
+
+        first = measurements(1000, 12.5f);
+        second = measurements(1100, 13.5f);
+    }
+
+    @TearDown
+    public void tearDown() {
+        binding.deactivate(0);
+        simulator.stop();
+    }
+
+    @Benchmark
+    public void changed() {
+        toggle = !toggle;
+        binding.publish(account, toggle ? first : second);
+    }
+
+    @Benchmark
+    public void unchanged() {
+        binding.publish(account, first);
+    }
+
+    private static Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements(float instant, float dayTotal) {
+        Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements = new EnumMap<>(EfergyEngageBindingType.class);
+        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
+        measurement.setValue(instant);
+        measurement.setMilis(1480000000000L);
+        measurements.put(EfergyEngageBindingType.INSTANT, measurement);
+        measurements.put(EfergyEngageBindingType.DAY_TOTAL, new EfergyEngageMeasurement(dayTotal, "kWh"));
+        return measurements;
+    }
+}
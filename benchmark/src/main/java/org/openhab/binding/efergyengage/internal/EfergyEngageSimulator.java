@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stub of the Efergy Engage API for load tests without engage.efergy.com. It answers
+ * /mobile/get_token, /mobile_proxy/getInstant, /mobile_proxy/getEnergy, /mobile_proxy/getHV and
+ * /mobile_proxy/getCurrentValuesSummary, for a single and a 3-phase sensor, over HTTP/1.1 keep-alive
+ * and can add latency, server errors, token expiry and malformed payloads.
+ * Point the binding at it by its url setting, e.g. efergyengage:url=http://localhost:8080
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageSimulator {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Random random = new Random();
+    private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+    private final AtomicInteger tokenCount = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+
+    private volatile long latency;
+    private volatile long jitter;
+    private volatile double errorRate;
+    private volatile double malformedRate;
+    private volatile long tokenExpiry;
+
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+
+    /**
+     * @param latency fixed delay of every response in ms
+     * @param jitter random extra delay of up to jitter ms
+     */
+    public void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * @param errorRate share of requests answered with HTTP 500, 0 - 1
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param malformedRate share of requests answered with truncated JSON, 0 - 1
+     */
+    public void setMalformedRate(double malformedRate) {
+        this.malformedRate = malformedRate;
+    }
+
+    /**
+     * @param tokenExpiry time in ms after which tokens are rejected, 0 keeps them valid
+     */
+    public void setTokenExpiry(long tokenExpiry) {
+        this.tokenExpiry = tokenExpiry;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public int getLoginCount() {
+        return tokenCount.get();
+    }
+
+    /**
+     * Starts listening on localhost.
+     *
+     * @param port port to listen on, 0 picks a free one
+     * @return base url of the simulator
+     */
+    public synchronized String start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connections = Executors.newCachedThreadPool();
+        connections.submit(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+        return "http://localhost:" + serverSocket.getLocalPort();
+    }
+
+    public synchronized void stop() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                //closing anyway
+            }
+            connections.shutdownNow();
+            serverSocket = null;
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connections.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                //server socket closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                //skip the headers, requests of the binding have no body
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    //ignored
+                }
+                respond(requestLine, out);
+            }
+        } catch (SocketException e) {
+            //connection closed by the client
+        } catch (IOException e) {
+            //connection broken, the client sees it as an error
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //closing anyway
+            }
+        }
+    }
+
+    private void respond(String requestLine, OutputStream out) throws IOException {
+        requests.incrementAndGet();
+        delay();
+
+        String[] parts = requestLine.split(" ");
+        String target = parts.length > 1 ? parts[1] : "/";
+        int query = target.indexOf('?');
+        String path = query >= 0 ? target.substring(0, query) : target;
+        Map<String, String> parameters = parseQuery(query >= 0 ? target.substring(query + 1) : "");
+
+        if (random.nextDouble() < errorRate) {
+            write(out, 500, "Internal Server Error", "{\"status\":\"error\",\"desc\":\"simulated failure\"}");
+            return;
+        }
+
+        String body;
+        switch (path) {
+            case "/mobile/get_token":
+                body = login(parameters);
+                break;
+            case "/mobile_proxy/getInstant":
+                body = checkToken(parameters);
+                if (body == null) {
+                    body = "{\"reading\":" + (200 + random.nextInt(3000)) + ",\"last_reading_time\":"
+                            + (System.currentTimeMillis() / 6000 * 6000) + ",\"status\":\"ok\"}";
+                }
+                break;
+            case "/mobile_proxy/getEnergy":
+                body = checkToken(parameters);
+                if (body == null) {
+                    body = "{\"sum\":\"" + String.format(Locale.ROOT, "%.2f", random.nextDouble() * 100) + "\",\"duration\":"
+                            + 86400 + ",\"units\":\"kWh\"}";
+                }
+                break;
+            case "/mobile_proxy/getCurrentValuesSummary":
+                body = checkToken(parameters);
+                if (body == null) {
+                    long time = System.currentTimeMillis() / 6000 * 6000;
+                    body = "[{\"cid\":\"PWER\",\"data\":[{\"" + time + "\":[" + (200 + random.nextInt(3000))
+                            + "]}],\"sid\":\"100001\",\"units\":\"kWm\",\"age\":3},"
+                            + "{\"cid\":\"PWER\",\"data\":[{\"" + time + "\":[" + (100 + random.nextInt(1000))
+                            + "," + (100 + random.nextInt(1000)) + "," + (100 + random.nextInt(1000))
+                            + "]}],\"sid\":\"100002\",\"units\":\"kWm\",\"age\":3}]";
+                }
+                break;
+            case "/mobile_proxy/getHV":
+                body = checkToken(parameters);
+                if (body == null) {
+                    body = history(parameters);
+                }
+                break;
+            default:
+                write(out, 404, "Not Found", "{\"status\":\"error\",\"desc\":\"unknown endpoint\"}");
+                return;
+        }
+
+        if (random.nextDouble() < malformedRate) {
+            body = body.substring(0, body.length() / 2);
+        }
+        write(out, 200, "OK", body);
+    }
+
+    private String login(Map<String, String> parameters) {
+        if (parameters.get("username") == null || parameters.get("password") == null) {
+            return "{\"status\":\"error\",\"desc\":\"username and password required\"}";
+        }
+        String token = "simulated-" + tokenCount.incrementAndGet();
+        tokens.put(token, System.currentTimeMillis());
+        return "{\"status\":\"ok\",\"token\":\"" + token + "\"}";
+    }
+
+    /**
+     * @return one power sample per minute between fromTime and toTime, given in seconds
+     */
+    private String history(Map<String, String> parameters) {
+        long from;
+        long to;
+        try {
+            from = Long.parseLong(parameters.get("fromTime")) / 60 * 60;
+            to = Long.parseLong(parameters.get("toTime"));
+        } catch (NumberFormatException e) {
+            return "{\"status\":\"error\",\"desc\":\"fromTime and toTime required\"}";
+        }
+        StringBuilder samples = new StringBuilder();
+        for (long time = from + 60; time < to; time += 60) {
+            samples.append(samples.length() > 0 ? "," : "").append("{\"").append(time * 1000).append("\":[")
+                    .append(200 + random.nextInt(3000)).append("]}");
+        }
+        return "{\"status\":\"ok\",\"data\":[{\"sid\":\"simulated\",\"cid\":\"PWER\",\"data\":[" + samples + "]}]}";
+    }
+
+    /**
+     * @return the error response for an unknown or expired token, null if the token is valid
+     */
+    private String checkToken(Map<String, String> parameters) {
+        Long issued = tokens.get(String.valueOf(parameters.get("token")));
+        if (issued == null || tokenExpiry > 0 && System.currentTimeMillis() - issued > tokenExpiry) {
+            return "{\"status\":\"error\",\"description\":\"bad token\"}";
+        }
+        return null;
+    }
+
+    private void delay() {
+        long delay = latency + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new ConcurrentHashMap<>();
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+            }
+        }
+        return parameters;
+    }
+
+    private static void write(OutputStream out, int code, String reason, String body) throws IOException {
+        byte[] content = body.getBytes(UTF_8);
+        String head = "HTTP/1.1 " + code + " " + reason + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + "Connection: keep-alive\r\n\r\n";
+        out.write(head.getBytes(UTF_8));
+        out.write(content);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+}
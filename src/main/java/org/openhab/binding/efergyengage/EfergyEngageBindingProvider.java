@@ -15,5 +15,53 @@ import org.openhab.core.binding.BindingProvider;
  * @since 1.0.0-SNAPSHOT
  */
 public interface EfergyEngageBindingProvider extends BindingProvider {
-    String getItemType(String itemName);
+    EfergyEngageBindingType getItemType(String itemName);
+
+    /**
+     * @return name of the account the item reads from
+     */
+    String getItemAccount(String itemName);
+
+    /**
+     * Returns the items of the account bound to the given type from an index rebuilt only when
+     * the binding configuration changes. Safe to call while the configuration is reloaded.
+     *
+     * @return names of the items bound to the type, never null
+     */
+    String[] getItemNames(String account, EfergyEngageBindingType type);
+
+    /**
+     * @return length of the aggregation window in ms of instantmin/max/avg/percentile items, 0 otherwise
+     */
+    long getItemWindow(String itemName);
+
+    /**
+     * @return percentile of instantpercentile items and latency or reading lag metric items, 0 otherwise
+     */
+    int getItemPercentile(String itemName);
+
+    /**
+     * @return true if the item takes numeric states, i.e. totals are posted as kWh numbers instead of text
+     */
+    boolean isItemNumeric(String itemName);
+
+    /**
+     * @return metric name of metric items, e.g. readinglag, null otherwise
+     */
+    String getItemMetric(String itemName);
+
+    /**
+     * @return endpoint of latency metric items, null otherwise
+     */
+    EfergyEngageBindingType getItemEndpoint(String itemName);
+
+    /**
+     * @return sensor id of per-sensor instant items, null otherwise
+     */
+    String getItemSensor(String itemName);
+
+    /**
+     * @return phase (channel) of per-sensor instant items starting at 1, 0 for the sum of all channels
+     */
+    int getItemPhase(String itemName);
 }
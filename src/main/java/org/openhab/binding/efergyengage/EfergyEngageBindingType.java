@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage;
+
+/**
+ * Kinds of values an item can be bound to, each knowing the endpoint it is read from.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public enum EfergyEngageBindingType {
+    INSTANT("instant", null),
+    SENSOR("sensor", null),
+    LAST_MEASUREMENT("lastmeasurement", null),
+    INSTANT_MIN("instantmin", null),
+    INSTANT_MAX("instantmax", null),
+    INSTANT_AVG("instantavg", null),
+    INSTANT_PERCENTILE("instantpercentile", null),
+    DAY_TOTAL("daytotal", "day"),
+    WEEK_TOTAL("weektotal", "week"),
+    MONTH_TOTAL("monthtotal", "month"),
+    YEAR_TOTAL("yeartotal", "year"),
+    DAY_COST("daycost", null),
+    MONTH_COST("monthcost", null),
+    ANOMALY("anomaly", null),
+    BASELINE_DEVIATION("baselinedeviation", null),
+    METRIC("metric", null);
+
+    private final String type;
+    private final String period;
+
+    EfergyEngageBindingType(String type, String period) {
+        this.type = type;
+        this.period = period;
+    }
+
+    /**
+     * @return the binding type as written in the item configuration
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the getEnergy period of total types, null for types served by getInstant
+     */
+    public String getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return the type whose request serves this type, INSTANT for all instant based types,
+     * null for metrics which are not read from the server
+     */
+    public EfergyEngageBindingType getEndpoint() {
+        if (this == METRIC) {
+            return null;
+        }
+        if (this == SENSOR) {
+            return this;
+        }
+        return period == null ? INSTANT : this;
+    }
+
+    public boolean isHistory() {
+        return this == INSTANT_MIN || this == INSTANT_MAX || this == INSTANT_AVG || this == INSTANT_PERCENTILE;
+    }
+
+    /**
+     * @return true for the costs priced from the instant readings by the tariff
+     */
+    public boolean isCost() {
+        return this == DAY_COST || this == MONTH_COST;
+    }
+
+    /**
+     * @return the binding type for the item configuration type, null if there is none
+     */
+    public static EfergyEngageBindingType fromType(String type) {
+        for (EfergyEngageBindingType value : values()) {
+            if (value.type.equals(type)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return type;
+    }
+}
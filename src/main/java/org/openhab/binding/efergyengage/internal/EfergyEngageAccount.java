@@ -0,0 +1,1028 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.apache.commons.lang.StringUtils;
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.openhab.binding.efergyengage.internal.EfergyEngageConstants.*;
+
+/**
+ * One Efergy Engage account with its own token, cache, reading history and polling worker.
+ * Accounts are polled independently, a slow account never delays another one.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageAccount {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(EfergyEngageAccount.class);
+
+    /**
+     * Routes the measurements of the account to the items bound to it.
+     */
+    interface Listener {
+        Set<EfergyEngageBindingType> getEndpoints(EfergyEngageAccount account);
+
+        void publish(EfergyEngageAccount account, Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements);
+
+        /**
+         * Called after every refresh cycle to post the metrics of the account.
+         */
+        void publishMetrics(EfergyEngageAccount account);
+
+        /**
+         * Called when the circuit breaker of the endpoint opens, its values are unknown until it recovers.
+         */
+        void publishError(EfergyEngageAccount account, EfergyEngageBindingType endpoint);
+    }
+
+    private final String name;
+    private final Listener listener;
+
+    //replaced as a whole, a request reads it once so it never mixes old and new settings
+    private volatile Settings settings = new Settings(EFERGY_URL, null, null, "-60");
+    private volatile File snapshotFile;
+    //fingerprint, token and time of the snapshot last saved, guarded by the account
+    private String savedFingerprint;
+    private String savedToken;
+    private long savedTime;
+    //last measurement of every endpoint, saved to the snapshot
+    private final Map<EfergyEngageBindingType, EfergyEngageMeasurement> latest = new ConcurrentHashMap<>();
+
+    private volatile EfergyEngageTransport transport;
+    private volatile long requestTimeout = 10000;
+    private volatile long cycleTimeout = 20000;
+    private volatile boolean adaptive;
+    private volatile EfergyEngageScheduler scheduler = new EfergyEngageScheduler(5000, 300000, 60000);
+    private volatile EfergyEngageHistory history = new EfergyEngageHistory(HISTORY_SIZE);
+    private volatile EfergyEngageSampleLog sampleLog;
+    private volatile EfergyEngageEnergyIntegrator integrator;
+    private volatile EfergyEngageCostMeter costMeter;
+    private volatile EfergyEngageAnomalyDetector detector;
+    private EfergyEngageImporter importer;
+    private volatile long backfillGap = 300000;
+    private volatile long backfillMax = 86400000;
+    //orders appending readings and backfilled samples to the history, the sample log and the other consumers
+    private final Object recordLock = new Object();
+
+    private final EfergyEngageCache cache;
+    private final EfergyEngageMetrics metrics = new EfergyEngageMetrics();
+    private final Map<EfergyEngageBindingType, EfergyEngageCircuitBreaker> breakers =
+            new EnumMap<>(EfergyEngageBindingType.class);
+    private final EfergyEngageTokenManager tokenManager = new EfergyEngageTokenManager(
+            new EfergyEngageTokenManager.Login() {
+                @Override
+                public String login() throws IOException {
+                    return requestToken();
+                }
+            });
+
+    //worker running the refresh cycles and executor fetching the endpoints of one cycle concurrently
+    private final ExecutorService worker;
+    private final ExecutorService executor;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    //requests submitted and not done yet, aborted by cancelRequests
+    private final Set<Request> requests = Collections.newSetFromMap(new ConcurrentHashMap<Request, Boolean>());
+    //incremented by cancelRequests, failures of requests submitted before are not counted
+    private final AtomicInteger generation = new AtomicInteger();
+
+    EfergyEngageAccount(String name, Map<EfergyEngageBindingType, Long> ttls, Listener listener) {
+        this.name = name;
+        this.listener = listener;
+        this.cache = new EfergyEngageCache(ttls);
+        this.worker = Executors.newSingleThreadExecutor(threadFactory("EfergyEngage " + name + " poll"));
+        this.executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS, threadFactory("EfergyEngage " + name + " fetch"));
+        for (EfergyEngageBindingType type : EfergyEngageBindingType.values()) {
+            if (type.getEndpoint() == type) {
+                breakers.put(type, new EfergyEngageCircuitBreaker());
+            }
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    String getName() {
+        return name;
+    }
+
+    EfergyEngageHistory getHistory() {
+        return history;
+    }
+
+    EfergyEngageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the server, credentials and offset of the account at once, a changed server or credentials
+     * drop the current token along with everything read with it: the cache, the history, the sample log,
+     * the integrated totals, the costs and the anomaly statistics. Requests still running with the old
+     * settings are aborted, those of an account whose settings are unchanged keep running.
+     *
+     * @param utcOffset offset of the local time, null keeps the current one
+     * @return true if any of them changed
+     */
+    boolean configure(String url, String email, String password, String utcOffset) {
+        Settings current = settings;
+        Settings next = new Settings(url, email, password, utcOffset != null ? utcOffset : current.utcOffset);
+        if (next.equals(current)) {
+            return false;
+        }
+        settings = next;
+        cancelRequests();
+        latest.clear();
+        if (!url.equals(current.url) || !email.equals(current.email) || !password.equals(current.password)) {
+            tokenManager.reset();
+            reset();
+        }
+        return true;
+    }
+
+    /**
+     * Drops the readings of the previous meter, the settings of the components are kept.
+     */
+    private void reset() {
+        cache.clear();
+        synchronized (recordLock) {
+            history.clear();
+            EfergyEngageSampleLog log = sampleLog;
+            if (log != null) {
+                log.clear();
+            }
+            EfergyEngageEnergyIntegrator integrator = this.integrator;
+            if (integrator != null) {
+                this.integrator = integrator.emptyCopy();
+            }
+            EfergyEngageCostMeter meter = costMeter;
+            if (meter != null) {
+                costMeter = meter.emptyCopy();
+            }
+            EfergyEngageAnomalyDetector detector = this.detector;
+            if (detector != null) {
+                this.detector = detector.emptyCopy();
+            }
+        }
+        logger.debug("Efergy Engage account {} changed, its readings are dropped", name);
+    }
+
+    /**
+     * @return copy of the last measurement of every endpoint read
+     */
+    Map<EfergyEngageBindingType, EfergyEngageMeasurement> getLatest() {
+        Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements = new EnumMap<>(EfergyEngageBindingType.class);
+        measurements.putAll(latest);
+        return measurements;
+    }
+
+    /**
+     * @param file file of the snapshot of the token and last measurements, null disables it
+     */
+    synchronized void setSnapshot(File file) {
+        if (file == null ? snapshotFile != null : !file.equals(snapshotFile)) {
+            snapshotFile = file;
+            savedTime = 0;
+        }
+    }
+
+    /**
+     * Takes over the token and publishes the measurements of the snapshot, if it was taken with
+     * the current settings. Totals of a period which has ended since are dropped.
+     *
+     * @return true if the snapshot was restored
+     */
+    boolean restoreSnapshot() {
+        File file = snapshotFile;
+        if (file == null) {
+            return false;
+        }
+        try {
+            EfergyEngageSnapshot snapshot = EfergyEngageSnapshot.load(file);
+            if (snapshot == null || !snapshot.getFingerprint().equals(settings.getFingerprint())) {
+                return false;
+            }
+            if (!snapshot.getToken().isEmpty()) {
+                tokenManager.restore(snapshot.getToken(), snapshot.getIssued());
+            }
+            Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements = snapshot.getMeasurements();
+            TimeZone zone = new SimpleTimeZone(-getOffset() * 60000, "Efergy");
+            long now = System.currentTimeMillis();
+            for (Iterator<Map.Entry<EfergyEngageBindingType, EfergyEngageMeasurement>> it =
+                         measurements.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<EfergyEngageBindingType, EfergyEngageMeasurement> entry = it.next();
+                if (EfergyEngageEnergyIntegrator.isTotal(entry.getKey()) && now
+                        >= EfergyEngageEnergyIntegrator.periodEnd(entry.getKey(), entry.getValue().getMilis(), zone)) {
+                    it.remove();
+                }
+            }
+            latest.putAll(measurements);
+            listener.publish(this, measurements);
+            logger.debug("Efergy Engage account {} restored {} measurements from {}", name, measurements.size(), file);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Cannot restore Efergy Engage snapshot {} of account {}: {}", file, name, e.toString());
+            return false;
+        }
+    }
+
+    void setTransport(EfergyEngageTransport transport) {
+        this.transport = transport;
+    }
+
+    void setTimeouts(long requestTimeout, long cycleTimeout) {
+        this.requestTimeout = requestTimeout;
+        this.cycleTimeout = cycleTimeout;
+    }
+
+    void setTokenLifetime(long tokenLifetime) {
+        tokenManager.setLifetime(tokenLifetime);
+    }
+
+    /**
+     * Configures the adaptive schedule, see {@link EfergyEngageScheduler}. A schedule with the same
+     * intervals is kept along with the reporting period it learned.
+     */
+    void setScheduler(boolean adaptive, long minInterval, long maxInterval, long fallbackInterval) {
+        this.adaptive = adaptive;
+        if (!scheduler.hasSettings(minInterval, maxInterval, fallbackInterval)) {
+            scheduler = new EfergyEngageScheduler(minInterval, maxInterval, fallbackInterval);
+        }
+    }
+
+    /**
+     * Configures the circuit breakers of all endpoints, a half-open probe is given up after the request timeout.
+     */
+    void setCircuitBreaker(int threshold, long delay, long maxDelay) {
+        for (EfergyEngageCircuitBreaker breaker : breakers.values()) {
+            breaker.configure(threshold, delay, maxDelay, requestTimeout);
+        }
+    }
+
+    void setHistorySize(int historySize) {
+        if (historySize != history.capacity()) {
+            synchronized (recordLock) {
+                history = new EfergyEngageHistory(historySize);
+                EfergyEngageSampleLog log = sampleLog;
+                if (log != null) {
+                    replay(log);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enables the totals integrated from the instant readings, reconciled with the server sums
+     * every reconcileInterval ms. An integrator with the same settings is kept, replacing it drops the
+     * running totals.
+     */
+    void setIntegration(boolean enabled, long reconcileInterval, long maxGap) {
+        if (!enabled) {
+            integrator = null;
+            return;
+        }
+        int offset = getOffset();
+        EfergyEngageEnergyIntegrator current = integrator;
+        if (current == null || !current.hasSettings(reconcileInterval, maxGap, offset)) {
+            integrator = new EfergyEngageEnergyIntegrator(reconcileInterval, maxGap, offset);
+        }
+    }
+
+    /**
+     * Prices the instant readings by the tariff, readings further than maxGap ms apart are not priced.
+     * A meter with the same settings is kept. The costs of a new one are restored from the sample log,
+     * without it replacing the tariff restarts them.
+     *
+     * @param tariff tariff of the account, null disables the costs
+     */
+    void setTariff(EfergyEngageTariff tariff, long maxGap) {
+        synchronized (recordLock) {
+            int offset = getOffset();
+            EfergyEngageCostMeter current = costMeter;
+            if (current != null && current.hasSettings(tariff, maxGap, offset)) {
+                return;
+            }
+            final EfergyEngageCostMeter meter = tariff != null ? new EfergyEngageCostMeter(tariff, maxGap, offset) : null;
+            if (meter != null) {
+                replay(sampleLog, new EfergyEngageSampleLog.Visitor() {
+                    @Override
+                    public void sample(long time, float watts) {
+                        meter.add(time, watts);
+                    }
+                });
+            }
+            costMeter = meter;
+        }
+    }
+
+    /**
+     * Imports the history of the account between from and to into the file on a thread of its own,
+     * resuming from the checkpoint of an earlier import of the same range into the same file. An import
+     * running with the same settings is kept, one with other settings is stopped at its last checkpoint.
+     *
+     * @param file file to import into, null stops the import
+     * @param to end of the range, 0 for the start of the day the import began
+     * @param interval minimal time between two page requests in ms
+     */
+    synchronized void setImport(File file, long from, long to, long interval) {
+        if (importer != null) {
+            if (importer.getFile().equals(file) && importer.getFrom() == from && importer.getTo() == to) {
+                return;
+            }
+            importer.stop();
+            importer = null;
+        }
+        if (file == null) {
+            return;
+        }
+        importer = new EfergyEngageImporter(name, file, from, to, interval, new EfergyEngageImporter.PageReader() {
+            @Override
+            public void read(long from, long to, EfergyEngageSampleLog.Visitor visitor) throws IOException {
+                Settings settings = EfergyEngageAccount.this.settings;
+                request(settings, "/mobile_proxy/getHV", "&fromTime=" + from / 1000 + "&toTime=" + to / 1000
+                        + "&aggPeriod=minute&type=PWER&offset=" + settings.utcOffset,
+                        EfergyEngageResponseDecoder.history(visitor));
+            }
+        });
+        Thread thread = threadFactory("EfergyEngage " + name + " import").newThread(importer);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Replaces the anomaly detector by one with the given settings, see {@link EfergyEngageAnomalyDetector}.
+     * A detector with the same settings is kept along with its baseline. A new one is restored from the
+     * sample log, without it the statistics start over.
+     */
+    void setAnomalyDetection(double alpha, double threshold, double baselineAlpha, double baselineThreshold,
+                             long baselineHold, double minDeviation) {
+        synchronized (recordLock) {
+            int offset = getOffset();
+            EfergyEngageAnomalyDetector current = this.detector;
+            if (current != null && current.hasSettings(alpha, threshold, baselineAlpha, baselineThreshold,
+                    baselineHold, minDeviation, offset)) {
+                return;
+            }
+            final EfergyEngageAnomalyDetector detector = new EfergyEngageAnomalyDetector(alpha, threshold,
+                    baselineAlpha, baselineThreshold, baselineHold, minDeviation, offset);
+            replay(sampleLog, new EfergyEngageSampleLog.Visitor() {
+                @Override
+                public void sample(long time, float watts) {
+                    detector.add(time, watts);
+                }
+            });
+            this.detector = detector;
+        }
+    }
+
+    /**
+     * @return the anomaly detector of the account
+     */
+    EfergyEngageAnomalyDetector getAnomalyDetector() {
+        return detector;
+    }
+
+    /**
+     * @return the cost meter of the account, null if no tariff is configured
+     */
+    EfergyEngageCostMeter getCostMeter() {
+        return costMeter;
+    }
+
+    /**
+     * Keeps the instant readings in a sample log which is replayed into the history on start. Gaps of more
+     * than backfillGap ms between the logged and a new reading are backfilled from the server, at most
+     * backfillMax ms back.
+     *
+     * @param file file of the sample log, null disables it
+     * @param size number of samples the log holds
+     */
+    void setSampleLog(File file, int size, long backfillGap, long backfillMax) {
+        synchronized (recordLock) {
+            this.backfillGap = backfillGap;
+            this.backfillMax = backfillMax;
+            EfergyEngageSampleLog current = sampleLog;
+            if (current != null && current.getFile().equals(file) && current.capacity() == size) {
+                return;
+            }
+            if (current != null) {
+                current.close();
+                sampleLog = null;
+            }
+            if (file == null) {
+                return;
+            }
+            try {
+                EfergyEngageSampleLog log = new EfergyEngageSampleLog(file, size);
+                replay(log);
+                sampleLog = log;
+                logger.debug("Efergy Engage account {} replayed {} samples from {}", name, log.size(), file);
+            } catch (IOException e) {
+                logger.error("Cannot open Efergy Engage sample log {} of account {}: {}", file, name, e.toString());
+            }
+        }
+    }
+
+    /**
+     * @return true while a refresh cycle of the account is running
+     */
+    boolean isBusy() {
+        return polling.get();
+    }
+
+    /**
+     * Starts a refresh cycle on the worker of the account unless it is not due yet.
+     *
+     * @return false if the previous cycle of the account is still running
+     */
+    boolean poll() {
+        if (adaptive && !scheduler.isDue(System.currentTimeMillis())) {
+            return true;
+        }
+        if (!polling.compareAndSet(false, true)) {
+            metrics.onSkippedCycle();
+            return false;
+        }
+        worker.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                    listener.publishMetrics(EfergyEngageAccount.this);
+                } catch (RuntimeException e) {
+                    logger.error("Efergy Engage account {} refresh failed: {}", name, e.toString());
+                } finally {
+                    polling.set(false);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Aborts the requests of the account still running or queued, e.g. when the configuration changes.
+     * The refresh cycle waiting for them ends without their measurements, failures caused by the abort
+     * are not counted.
+     */
+    void cancelRequests() {
+        generation.incrementAndGet();
+        for (Request request : requests) {
+            request.abort();
+        }
+    }
+
+    void close() {
+        cancelRequests();
+        setImport(null, 0, 0, 0);
+        worker.shutdownNow();
+        executor.shutdownNow();
+        saveSnapshot(true);
+        cache.clear();
+        synchronized (recordLock) {
+            if (sampleLog != null) {
+                sampleLog.close();
+                sampleLog = null;
+            }
+        }
+    }
+
+    private void refresh() {
+        final long now = System.currentTimeMillis();
+        //a cycle overtaken by a change of the settings publishes nothing, its values may be of the old meter
+        final int cycle = generation.get();
+
+        try {
+            tokenManager.getToken();
+        } catch (Exception e) {
+            logger.error("Cannot get Efergy Engage token for account {}: {}", name, e.toString());
+            scheduler.onNoReading(now);
+            return;
+        }
+
+        Set<EfergyEngageBindingType> endpoints = listener.getEndpoints(this);
+        if (endpoints.isEmpty()) {
+            return;
+        }
+
+        //integrated totals are read from the server only to reconcile them, bypassing the cache
+        EfergyEngageEnergyIntegrator integrator = this.integrator;
+        Set<EfergyEngageBindingType> integrated = EnumSet.noneOf(EfergyEngageBindingType.class);
+        Set<EfergyEngageBindingType> reconciling = EnumSet.noneOf(EfergyEngageBindingType.class);
+        if (integrator != null) {
+            for (EfergyEngageBindingType endpoint : endpoints) {
+                if (!EfergyEngageEnergyIntegrator.isTotal(endpoint)) {
+                    continue;
+                }
+                if (integrator.isReconcileDue(endpoint, now)) {
+                    reconciling.add(endpoint);
+                } else {
+                    integrated.add(endpoint);
+                }
+            }
+            if (!integrated.isEmpty() || !reconciling.isEmpty()) {
+                endpoints = EnumSet.copyOf(endpoints);
+                endpoints.removeAll(integrated);
+                endpoints.add(EfergyEngageBindingType.INSTANT);
+            }
+        }
+
+        final long deadline = now + cycleTimeout;
+        Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements = new EnumMap<>(EfergyEngageBindingType.class);
+        Set<EfergyEngageBindingType> missing = EnumSet.noneOf(EfergyEngageBindingType.class);
+
+        //serve cached endpoints, stale ones are refreshed in the background for the next cycle
+        for (EfergyEngageBindingType endpoint : endpoints) {
+            EfergyEngageCache.Entry entry = reconciling.contains(endpoint) ? null : cache.get(endpoint, now);
+            if (entry == null) {
+                missing.add(endpoint);
+            } else {
+                measurements.put(endpoint, entry.getMeasurement());
+                if (!cache.isFresh(endpoint, entry, now) && entry.startRefresh()) {
+                    if (breakers.get(endpoint).allowRequest(now)) {
+                        submitRequest(endpoint, entry);
+                    } else {
+                        entry.endRefresh();
+                    }
+                }
+            }
+        }
+
+        //endpoints with an open circuit breaker are not requested at all
+        Map<EfergyEngageBindingType, Future<EfergyEngageMeasurement>> requests = new EnumMap<>(EfergyEngageBindingType.class);
+        for (EfergyEngageBindingType endpoint : missing) {
+            if (breakers.get(endpoint).allowRequest(now)) {
+                requests.put(endpoint, submitRequest(endpoint, null));
+            } else {
+                logger.debug("Efergy Engage {} circuit of account {} is open, request skipped", endpoint, name);
+            }
+        }
+
+        //instant reading goes first so that slow period totals do not delay it
+        Future<EfergyEngageMeasurement> instantRequest = requests.remove(EfergyEngageBindingType.INSTANT);
+        EfergyEngageMeasurement reading = null;
+        if (instantRequest != null) {
+            reading = awaitMeasurement(EfergyEngageBindingType.INSTANT, instantRequest, deadline);
+            if (reading != null) {
+                measurements.put(EfergyEngageBindingType.INSTANT, reading);
+                scheduler.onReading(reading.getMilis(), System.currentTimeMillis());
+            } else {
+                scheduler.onNoReading(System.currentTimeMillis());
+            }
+        } else {
+            scheduler.onNoReading(System.currentTimeMillis());
+        }
+        if (generation.get() != cycle) {
+            return;
+        }
+        //the request recorded the reading before the aggregates are published, unless a gap has to be
+        //backfilled first, which is done only after publishing to not delay the reading
+        boolean gap = reading != null && isGap(reading);
+        EfergyEngageMeasurement instant = measurements.remove(EfergyEngageBindingType.INSTANT);
+        if (instant != null) {
+            listener.publish(this, Collections.singletonMap(EfergyEngageBindingType.INSTANT, instant));
+            latest.put(EfergyEngageBindingType.INSTANT, instant);
+        }
+        if (gap) {
+            record(reading);
+        }
+
+        for (Map.Entry<EfergyEngageBindingType, Future<EfergyEngageMeasurement>> request : requests.entrySet()) {
+            EfergyEngageMeasurement measurement = awaitMeasurement(request.getKey(), request.getValue(), deadline);
+            if (measurement != null) {
+                measurements.put(request.getKey(), measurement);
+            }
+        }
+        if (generation.get() != cycle) {
+            return;
+        }
+        if (integrator != null) {
+            //totals whose reconciliation failed are served integrated as long as they were reconciled before
+            integrated.addAll(reconciling);
+            for (EfergyEngageBindingType endpoint : integrated) {
+                EfergyEngageMeasurement total = measurements.containsKey(endpoint) ? null
+                        : integrator.getMeasurement(endpoint);
+                if (total != null) {
+                    measurements.put(endpoint, total);
+                }
+            }
+        }
+        listener.publish(this, measurements);
+        latest.putAll(measurements);
+        saveSnapshot(false);
+    }
+
+    /**
+     * Saves the snapshot when the settings or the token changed, otherwise at most every
+     * {@link EfergyEngageConstants#SNAPSHOT_INTERVAL} ms, the measurements are only a head start after a restart.
+     *
+     * @param force true to save it anyway, e.g. when the account is closed
+     */
+    private synchronized void saveSnapshot(boolean force) {
+        File file = snapshotFile;
+        if (file == null) {
+            return;
+        }
+        String fingerprint = settings.getFingerprint();
+        String token = tokenManager.peekToken();
+        long now = System.currentTimeMillis();
+        if (!force && fingerprint.equals(savedFingerprint) && StringUtils.equals(token, savedToken)
+                && now - savedTime < SNAPSHOT_INTERVAL) {
+            return;
+        }
+        try {
+            new EfergyEngageSnapshot(fingerprint, token, tokenManager.getIssued(), getLatest()).save(file);
+            savedFingerprint = fingerprint;
+            savedToken = token;
+            savedTime = now;
+        } catch (IOException e) {
+            logger.warn("Cannot save Efergy Engage snapshot {} of account {}: {}", file, name, e.toString());
+        }
+    }
+
+    /**
+     * Reads the endpoint on the executor and caches the result.
+     *
+     * @param stale the cached entry being refreshed in the background, null if there is none
+     */
+    private Future<EfergyEngageMeasurement> submitRequest(final EfergyEngageBindingType endpoint,
+                                                          final EfergyEngageCache.Entry stale) {
+        final int submitted = generation.get();
+        Request request = new Request(new Callable<EfergyEngageMeasurement>() {
+            @Override
+            public EfergyEngageMeasurement call() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    EfergyEngageMeasurement measurement = endpoint == EfergyEngageBindingType.INSTANT ? readInstant()
+                            : endpoint == EfergyEngageBindingType.SENSOR ? readSensors()
+                            : readEnergy(endpoint.getPeriod());
+                    if (generation.get() != submitted) {
+                        //read with settings replaced meanwhile, it must not reach the reset state
+                        throw new CancellationException();
+                    }
+                    metrics.onSuccess(endpoint, System.nanoTime() - start);
+                    if (breakers.get(endpoint).onSuccess()) {
+                        logger.info("Efergy Engage {} circuit of account {} closed, server is back", endpoint, name);
+                    }
+                    cache.put(endpoint, measurement);
+                    EfergyEngageEnergyIntegrator integrator = EfergyEngageAccount.this.integrator;
+                    if (endpoint == EfergyEngageBindingType.INSTANT) {
+                        //a reading after a gap awaited by the refresh cycle is recorded there once it is
+                        //published, backfilling the gap would delay it
+                        if (stale != null || !isGap(measurement)) {
+                            record(measurement);
+                        }
+                        metrics.onReading(measurement.getMilis(), System.currentTimeMillis());
+                    } else if (integrator != null && EfergyEngageEnergyIntegrator.isTotal(endpoint)) {
+                        integrator.reconcile(endpoint, measurement, System.currentTimeMillis());
+                    }
+                    return measurement;
+                } catch (Exception e) {
+                    if (generation.get() != submitted) {
+                        logger.debug("Efergy Engage {} request of account {} aborted", endpoint, name);
+                        throw e;
+                    }
+                    metrics.onFailure(endpoint, System.nanoTime() - start);
+                    EfergyEngageCircuitBreaker breaker = breakers.get(endpoint);
+                    if (breaker.onFailure(System.currentTimeMillis())) {
+                        logger.warn("Efergy Engage {} circuit of account {} opened after repeated failures: {}",
+                                endpoint, name, e.toString());
+                        cache.remove(endpoint);
+                        listener.publishError(EfergyEngageAccount.this, endpoint);
+                    }
+                    if (stale != null) {
+                        logger.error("Cannot refresh Efergy Engage {} data of account {}: {}", endpoint, name,
+                                e.toString());
+                    }
+                    throw e;
+                } finally {
+                    if (stale != null) {
+                        stale.endRefresh();
+                    }
+                }
+            }
+        });
+        requests.add(request);
+        executor.execute(request);
+        return request;
+    }
+
+    private EfergyEngageMeasurement awaitMeasurement(EfergyEngageBindingType endpoint,
+                                                     Future<EfergyEngageMeasurement> request, long deadline) {
+        long timeout = Math.min(requestTimeout, deadline - System.currentTimeMillis());
+        try {
+            return request.get(Math.max(timeout, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            metrics.onTimeout();
+            logger.error("Efergy Engage {} request of account {} timed out", endpoint, name);
+        } catch (ExecutionException e) {
+            logger.error("Cannot get Efergy Engage data of account {}: {}", name, e.getCause());
+        } catch (CancellationException e) {
+            logger.debug("Efergy Engage {} request of account {} was cancelled", endpoint, name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //a request still running is left to fill the cache for the next cycle
+        return null;
+    }
+
+    /**
+     * Adds the instant reading to the history, the sample log, the integrator, the cost meter and the
+     * anomaly detector, backfilling the gap since the last logged sample first. The gap is read from the
+     * server without holding the lock, so that it never blocks reconfiguring or closing the account.
+     */
+    private void record(EfergyEngageMeasurement measurement) {
+        int recorded = generation.get();
+        List<EfergyEngageMeasurement> samples = Collections.emptyList();
+        EfergyEngageSampleLog log = sampleLog;
+        if (log != null && isGap(measurement)) {
+            samples = backfill(log.getLastTime(), measurement.getMilis());
+        }
+        synchronized (recordLock) {
+            if (generation.get() != recorded) {
+                //read with settings replaced meanwhile
+                return;
+            }
+            for (EfergyEngageMeasurement sample : samples) {
+                add(sample.getMilis(), sample.getValue());
+            }
+            add(measurement.getMilis(), measurement.getValue());
+        }
+    }
+
+    /**
+     * Feeds a sample to every consumer of the readings, which all ignore samples not newer than their last one.
+     * Called holding the record lock.
+     */
+    private void add(long time, float watts) {
+        EfergyEngageSampleLog log = sampleLog;
+        if (log != null) {
+            log.append(time, watts);
+        }
+        history.add(time, watts);
+        EfergyEngageEnergyIntegrator integrator = this.integrator;
+        if (integrator != null) {
+            integrator.add(time, watts);
+        }
+        EfergyEngageCostMeter meter = costMeter;
+        if (meter != null) {
+            meter.add(time, watts);
+        }
+        EfergyEngageAnomalyDetector detector = this.detector;
+        if (detector != null) {
+            detector.add(time, watts);
+        }
+    }
+
+    private boolean isGap(EfergyEngageMeasurement measurement) {
+        EfergyEngageSampleLog log = sampleLog;
+        return log != null && log.getLastTime() > 0 && measurement.getMilis() - log.getLastTime() > backfillGap;
+    }
+
+    /**
+     * Reads the samples between from and to from the server in chunks.
+     *
+     * @return the samples read in ascending time order, those of the chunks read before a failure if any
+     */
+    private List<EfergyEngageMeasurement> backfill(long from, long to) {
+        long start = Math.max(from, to - backfillMax);
+        List<EfergyEngageMeasurement> backfilled = new ArrayList<>();
+        try {
+            for (long chunk = start; chunk < to; chunk += BACKFILL_CHUNK) {
+                List<EfergyEngageMeasurement> samples = readHistory(chunk, Math.min(to, chunk + BACKFILL_CHUNK));
+                Collections.sort(samples, new Comparator<EfergyEngageMeasurement>() {
+                    @Override
+                    public int compare(EfergyEngageMeasurement a, EfergyEngageMeasurement b) {
+                        return Long.compare(a.getMilis(), b.getMilis());
+                    }
+                });
+                for (EfergyEngageMeasurement sample : samples) {
+                    if (sample.getMilis() > from && sample.getMilis() < to) {
+                        backfilled.add(sample);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot backfill Efergy Engage readings of account {}: {}", name, e.toString());
+        }
+        logger.debug("Efergy Engage account {} backfilled {} samples of a {}ms gap", name, backfilled.size(), to - from);
+        return backfilled;
+    }
+
+    private void replay(EfergyEngageSampleLog log) {
+        final EfergyEngageHistory target = history;
+        log.replay(target.capacity(), new EfergyEngageSampleLog.Visitor() {
+            @Override
+            public void sample(long time, float watts) {
+                target.add(time, watts);
+            }
+        });
+    }
+
+    /**
+     * Replays the whole sample log, if there is one, to the visitor.
+     */
+    private static void replay(EfergyEngageSampleLog log, EfergyEngageSampleLog.Visitor visitor) {
+        if (log != null) {
+            log.replay(log.size(), visitor);
+        }
+    }
+
+    /**
+     * @return Efergy offset of the local time in minutes, 0 for UTC if it is not a number
+     */
+    private int getOffset() {
+        try {
+            return Integer.parseInt(settings.utcOffset.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Efergy Engage offset {} of account {} is not a number, periods taken in UTC",
+                    settings.utcOffset, name);
+            return 0;
+        }
+    }
+
+    /**
+     * Request of an endpoint which can be aborted while it is waiting for the server.
+     */
+    private class Request extends FutureTask<EfergyEngageMeasurement> {
+
+        private volatile Thread runner;
+
+        Request(Callable<EfergyEngageMeasurement> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            runner = Thread.currentThread();
+            try {
+                super.run();
+            } finally {
+                runner = null;
+            }
+        }
+
+        @Override
+        protected void done() {
+            requests.remove(this);
+        }
+
+        void abort() {
+            cancel(true);
+            Thread thread = runner;
+            EfergyEngageTransport transport = EfergyEngageAccount.this.transport;
+            if (thread != null && transport != null) {
+                transport.abort(thread);
+            }
+        }
+    }
+
+    private String requestToken() throws IOException {
+        Settings settings = this.settings;
+        //encoded, so that a password holding & or % neither breaks the query nor escapes the masking of errors
+        String url = settings.url + "/mobile/get_token?device=android&username="
+                + URLEncoder.encode(settings.email, "UTF-8") + "&password=" + URLEncoder.encode(settings.password, "UTF-8");
+
+        metrics.onLogin();
+        String token = transport.get(url, EfergyEngageResponseDecoder.TOKEN);
+        if (settings != this.settings) {
+            //a token of the old credentials must not survive the reset done by configure
+            throw new EfergyEngageException("Efergy Engage settings of account " + name + " changed during login");
+        }
+        logger.debug("Efergy Engage account {} logged in", name);
+        return token;
+    }
+
+    private EfergyEngageMeasurement readInstant() throws IOException {
+        EfergyEngageMeasurement measurement = request(settings, "/mobile_proxy/getInstant", "",
+                EfergyEngageResponseDecoder.INSTANT);
+        logger.debug("Efergy reading of account {}: {}", name, measurement.getValue());
+        return measurement;
+    }
+
+    /**
+     * Reads all sensors of the account in one request, however many sensor items there are.
+     */
+    private EfergyEngageSensorTable readSensors() throws IOException {
+        EfergyEngageSensorTable table = request(settings, "/mobile_proxy/getCurrentValuesSummary", "",
+                EfergyEngageResponseDecoder.SUMMARY);
+        logger.debug("Efergy readings of account {} for {} sensors: {}", name, table.size(), table.getValue());
+        return table;
+    }
+
+    private EfergyEngageMeasurement readEnergy(String period) throws IOException {
+        Settings settings = this.settings;
+        EfergyEngageMeasurement measurement = request(settings, "/mobile_proxy/getEnergy",
+                "&period=" + period + "&offset=" + settings.utcOffset, EfergyEngageResponseDecoder.ENERGY);
+        //the server does not date its sums, the time read tells the period of a total restored from the snapshot
+        measurement.setMilis(System.currentTimeMillis());
+        logger.debug("Efergy reading of account {} for {} period: {}", name, period, measurement);
+        return measurement;
+    }
+
+    private List<EfergyEngageMeasurement> readHistory(long from, long to) throws IOException {
+        Settings settings = this.settings;
+        return request(settings, "/mobile_proxy/getHV", "&fromTime=" + from / 1000 + "&toTime=" + to / 1000
+                + "&aggPeriod=minute&type=PWER&offset=" + settings.utcOffset, EfergyEngageResponseDecoder.HISTORY);
+    }
+
+    /**
+     * Sends an authenticated request. If the server rejects the token, the request is
+     * repeated once with the token of a single shared re-login.
+     */
+    private <T> T request(Settings settings, String path, String query, EfergyEngageTransport.ResponseHandler<T> handler)
+            throws IOException {
+        String token = tokenManager.getToken();
+        try {
+            return transport.get(settings.url + path + "?token=" + token + query, handler);
+        } catch (EfergyEngageAuthException e) {
+            logger.debug("Efergy token of account {} rejected: {}", name, e.getMessage());
+            metrics.onRelogin();
+            token = tokenManager.refresh(token);
+            return transport.get(settings.url + path + "?token=" + token + query, handler);
+        }
+    }
+
+    /**
+     * Server, credentials and offset of the account, never changed once created.
+     */
+    private static final class Settings {
+
+        private final String url;
+        private final String email;
+        private final String password;
+        private final String utcOffset;
+
+        Settings(String url, String email, String password, String utcOffset) {
+            this.url = url;
+            this.email = email;
+            this.password = password;
+            this.utcOffset = utcOffset;
+        }
+
+        String getFingerprint() {
+            return EfergyEngageSnapshot.fingerprint(url, email, password, utcOffset);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return url.equals(other.url) && StringUtils.equals(email, other.email)
+                    && StringUtils.equals(password, other.password) && utcOffset.equals(other.utcOffset);
+        }
+
+        @Override
+        public int hashCode() {
+            return url.hashCode();
+        }
+    }
+}
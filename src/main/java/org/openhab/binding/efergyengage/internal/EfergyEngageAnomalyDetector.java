@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+/**
+ * Watches the instant power for spikes and for loads that stay off their usual level, at O(1)
+ * per reading and constant memory.
+ * <p>
+ * Spikes are readings more than threshold standard deviations off an exponentially weighted mean
+ * and variance of the recent readings, taken before the reading is added. The anomaly clears once
+ * the readings are back within half the threshold.
+ * <p>
+ * The baseline is an exponentially weighted mean and variance per hour of the day in the Efergy
+ * offset, e.g. of the readings between 3 and 4 am, into which the readings of the hour are folded
+ * once the hour is over, weighted by baselineAlpha per day. A load more than baselineThreshold standard
+ * deviations off the baseline of its hour for at least baselineHold ms, like an appliance left on,
+ * is reported as its deviation in W at that time until it is back within the threshold.
+ * <p>
+ * Standard deviations are taken as at least minDeviation W, so a steady load does not turn every
+ * small change into an anomaly.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageAnomalyDetector {
+
+    //readings needed before the statistics are trusted
+    private static final int WARMUP = 30;
+    //days folded into the baseline of an hour before it is trusted
+    private static final int BASELINE_WARMUP = 3;
+    private static final long HOUR = 3600000;
+    private static final long DAY = 24 * HOUR;
+
+    private final double alpha;
+    private final double threshold;
+    private final double baselineAlpha;
+    private final double baselineThreshold;
+    private final long baselineHold;
+    private final double minDeviation;
+    private final long offset;
+
+    private double mean;
+    private double variance;
+    private int count;
+    private boolean anomaly;
+
+    private final double[] baselineMeans = new double[24];
+    private final double[] baselineVariances = new double[24];
+    private final int[] baselineCounts = new int[24];
+    //readings of the current hour, folded into its baseline when the hour is over
+    private long hourStart;
+    private double hourSum;
+    private double hourSquares;
+    private int hourCount;
+    //time the readings left the baseline, 0 while they are within it
+    private long deviationStart;
+    private double deviation;
+    private boolean deviationWarm;
+    private long lastTime;
+
+    /**
+     * @param utcOffset Efergy offset of the local time in minutes, e.g. -60 for UTC+1
+     */
+    EfergyEngageAnomalyDetector(double alpha, double threshold, double baselineAlpha, double baselineThreshold,
+                                long baselineHold, double minDeviation, int utcOffset) {
+        this.alpha = alpha;
+        this.threshold = threshold;
+        this.baselineAlpha = baselineAlpha;
+        this.baselineThreshold = baselineThreshold;
+        this.baselineHold = baselineHold;
+        this.minDeviation = minDeviation;
+        this.offset = -utcOffset * 60000L;
+    }
+
+    /**
+     * @return true if the detector was created with these settings, so that its statistics can be kept
+     */
+    boolean hasSettings(double alpha, double threshold, double baselineAlpha, double baselineThreshold,
+                        long baselineHold, double minDeviation, int utcOffset) {
+        return this.alpha == alpha && this.threshold == threshold && this.baselineAlpha == baselineAlpha
+                && this.baselineThreshold == baselineThreshold && this.baselineHold == baselineHold
+                && this.minDeviation == minDeviation && offset == -utcOffset * 60000L;
+    }
+
+    /**
+     * @return a detector with the settings of this one and no statistics yet
+     */
+    EfergyEngageAnomalyDetector emptyCopy() {
+        return new EfergyEngageAnomalyDetector(alpha, threshold, baselineAlpha, baselineThreshold, baselineHold,
+                minDeviation, (int) (-offset / 60000));
+    }
+
+    synchronized void add(long time, float watts) {
+        if (time <= lastTime) {
+            return;
+        }
+        lastTime = time;
+
+        if (count >= WARMUP) {
+            double z = score(watts, mean, variance);
+            anomaly = anomaly ? z >= threshold / 2 : z > threshold;
+        }
+        count++;
+        double diff = watts - mean;
+        double increment = (count == 1 ? 1 : alpha) * diff;
+        mean += increment;
+        variance = (1 - alpha) * (variance + diff * increment);
+
+        long start = time - ((time + offset) % DAY + DAY) % HOUR;
+        if (start != hourStart) {
+            fold();
+            hourStart = start;
+        }
+        int hour = hour(start);
+        if (baselineCounts[hour] >= BASELINE_WARMUP) {
+            deviationWarm = true;
+            if (score(watts, baselineMeans[hour], baselineVariances[hour]) > baselineThreshold) {
+                if (deviationStart == 0) {
+                    deviationStart = time;
+                }
+                if (deviation == 0 && time - deviationStart >= baselineHold) {
+                    deviation = watts - baselineMeans[hour];
+                }
+            } else {
+                deviationStart = 0;
+                deviation = 0;
+            }
+        }
+        hourSum += watts;
+        hourSquares += (double) watts * watts;
+        hourCount++;
+    }
+
+    /**
+     * @return 1 during a spike, 0 otherwise, NaN while the statistics warm up
+     */
+    synchronized double getAnomaly() {
+        return count <= WARMUP ? Double.NaN : anomaly ? 1 : 0;
+    }
+
+    /**
+     * @return deviation of a lasting load off the baseline in W, 0 within it, NaN while the baseline warms up
+     */
+    synchronized double getBaselineDeviation() {
+        return deviationWarm ? deviation : Double.NaN;
+    }
+
+    /**
+     * Folds the mean and variance of the readings of the hour that is over into its baseline.
+     */
+    private void fold() {
+        if (hourCount == 0) {
+            return;
+        }
+        int hour = hour(hourStart);
+        double hourMean = hourSum / hourCount;
+        double hourVariance = Math.max(0, hourSquares / hourCount - hourMean * hourMean);
+        if (baselineCounts[hour] == 0) {
+            baselineMeans[hour] = hourMean;
+            baselineVariances[hour] = hourVariance;
+        } else {
+            double diff = hourMean - baselineMeans[hour];
+            baselineMeans[hour] += baselineAlpha * diff;
+            baselineVariances[hour] = (1 - baselineAlpha) * (baselineVariances[hour] + baselineAlpha * diff * diff)
+                    + baselineAlpha * hourVariance;
+        }
+        baselineCounts[hour]++;
+        hourSum = 0;
+        hourSquares = 0;
+        hourCount = 0;
+    }
+
+    private int hour(long time) {
+        return (int) (((time + offset) % DAY + DAY) % DAY / HOUR);
+    }
+
+    /**
+     * @return distance of the value from the mean in standard deviations
+     */
+    private double score(double value, double mean, double variance) {
+        return Math.abs(value - mean) / Math.max(Math.sqrt(variance), minDeviation);
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+/**
+ * Thrown when the Efergy Engage server rejects the token of a request.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageAuthException extends EfergyEngageException {
+    private static final long serialVersionUID = 1L;
+
+    public EfergyEngageAuthException(String message) {
+        super(message);
+    }
+}
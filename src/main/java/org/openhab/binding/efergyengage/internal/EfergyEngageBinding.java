@@ -8,30 +8,37 @@
  */
 package org.openhab.binding.efergyengage.internal;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import org.apache.commons.lang.StringUtils;
 import org.openhab.binding.efergyengage.EfergyEngageBindingProvider;
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
 import org.openhab.core.binding.AbstractActiveBinding;
-import org.openhab.core.items.ItemNotFoundException;
-import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.binding.BindingProvider;
 import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.StringType;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.openhab.binding.efergyengage.internal.EfergyEngageConstants.*;
 
@@ -55,20 +62,151 @@ public class EfergyEngageBinding extends AbstractActiveBinding<EfergyEngageBindi
      * was called.
      */
     private BundleContext bundleContext;
-    private ItemRegistry itemRegistry;
 
     /**
      * the refresh interval which is used to poll values from the EfergyEngage
      * server (optional, defaults to 60000ms)
      */
-    private long refreshInterval = 60000;
-    private String email;
-    private String password;
-    private String token = "";
-    private String utcOffset = "-60";
+    private volatile long refreshInterval = 60000;
+    /**
+     * adaptive polling follows the reporting period of the sensor instead of the refresh
+     * interval, between minRefresh and maxRefresh (optional, defaults to false, 5000ms and 300000ms)
+     */
+    private boolean adaptive = false;
+    private long minRefresh = 5000;
+    private long maxRefresh = 300000;
+
+    /**
+     * the maximum time a single request to the EfergyEngage server may take
+     * (optional, defaults to 10000ms)
+     */
+    private long requestTimeout = 10000;
+
+    /**
+     * the maximum time all requests of one refresh cycle may take together
+     * (optional, defaults to 20000ms)
+     */
+    private long cycleTimeout = 20000;
+
+    /**
+     * the socket connect and read timeouts of the HTTP transport
+     * (optional, default to 5000ms and 10000ms)
+     */
+    private int connectTimeout = 5000;
+    private int readTimeout = 10000;
+
+    /**
+     * consecutive failures opening the circuit breaker of an endpoint, and the backoff before the
+     * first probe, doubled for every failed probe up to breakerMaxDelay
+     * (optional, defaults to 3, 10000ms and 600000ms)
+     */
+    private int breakerThreshold = 3;
+    private long breakerDelay = 10000;
+    private long breakerMaxDelay = 600000;
 
-    //Gson parser
-    private JsonParser parser = new JsonParser();
+    private EfergyEngageTransport transport;
+
+    /**
+     * time to live of the cached measurement per item type, e.g. <bindingName>:ttl.yeartotal=3600000
+     * (optional, defaults to no caching of instant readings and growing ttls for longer periods)
+     */
+    private final Map<EfergyEngageBindingType, Long> ttls = new ConcurrentHashMap<>();
+
+    //last values posted to the items, only changes are posted again
+    private final EfergyEngagePublishCache published = new EfergyEngagePublishCache();
+
+    /**
+     * number of instant readings kept per account for the instantmin/max/avg/percentile items
+     * (optional, defaults to 8640, i.e. 24 hours of readings every 10s)
+     */
+    private int historySize = HISTORY_SIZE;
+
+    /**
+     * directory of the sample logs keeping the instant readings of every account across restarts, and
+     * their size in samples (optional, disabled by default, 100000 samples)
+     */
+    private File sampleLogDirectory;
+    private int sampleLogSize = SAMPLE_LOG_SIZE;
+
+    /**
+     * gaps between logged readings longer than backfillGap are read from the server, at most
+     * backfillMax back (optional, defaults to 300000ms and 86400000ms)
+     */
+    private long backfillGap = 300000;
+    private long backfillMax = 86400000;
+
+    /**
+     * day, week, month and year totals integrated from the instant readings instead of being read
+     * every cycle, reconciled with the server every reconcileInterval; readings further apart than
+     * integrationMaxGap are not integrated (optional, defaults to false, 3600000ms and 300000ms)
+     */
+    private boolean integrate = false;
+    private long reconcileInterval = 3600000;
+    private long integrationMaxGap = 300000;
+
+    /**
+     * tariff pricing the instant readings for the daycost and monthcost items, configured by
+     * tariff.rate, tariff.bands, tariff.tiers and tariff.standingCharge (optional, no costs without it)
+     */
+    private EfergyEngageTariff tariff;
+
+    /**
+     * anomaly detection: spikes are readings more than anomaly.threshold standard deviations off the mean
+     * weighted by anomaly.alpha, baseline deviations loads more than anomaly.baselineThreshold standard
+     * deviations off the hour of day baseline weighted by anomaly.baselineAlpha for anomaly.baselineHold,
+     * standard deviations taken as at least anomaly.minDeviation (optional, defaults to 0.1, 3, 0.05, 3,
+     * 900000ms and 50W)
+     */
+    private double anomalyAlpha = 0.1;
+    private double anomalyThreshold = 3;
+    private double baselineAlpha = 0.05;
+    private double baselineThreshold = 3;
+    private long baselineHold = 900000;
+    private double minDeviation = 50;
+
+    /**
+     * directory of the snapshots keeping the token and last measurements of every account, published
+     * right after a start (optional, disabled by default)
+     */
+    private File snapshotDirectory;
+
+    /**
+     * directory to import the history between import.from and import.to into, one CSV file per account,
+     * requesting a page at most every import.interval (optional, disabled by default; times as
+     * yyyy-MM-dd, yyyy-MM-dd'T'HH:mm or ms, to defaults to the start of today; 2000ms)
+     */
+    private File importDirectory;
+    private long importFrom;
+    private long importTo;
+    private long importInterval = 2000;
+
+    /**
+     * the configured accounts, the one configured by plain email/password is named default,
+     * further ones are configured like <bindingName>:<account>.email=...
+     */
+    private final Map<String, EfergyEngageAccount> accounts = new ConcurrentHashMap<>();
+
+    private final EfergyEngageAccount.Listener accountListener = new EfergyEngageAccount.Listener() {
+        @Override
+        public Set<EfergyEngageBindingType> getEndpoints(EfergyEngageAccount account) {
+            return planEndpoints(account);
+        }
+
+        @Override
+        public void publish(EfergyEngageAccount account, Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements) {
+            EfergyEngageBinding.this.publish(account, measurements);
+        }
+
+        @Override
+        public void publishMetrics(EfergyEngageAccount account) {
+            EfergyEngageBinding.this.publishMetrics(account);
+        }
+
+        @Override
+        public void publishError(EfergyEngageAccount account, EfergyEngageBindingType endpoint) {
+            EfergyEngageBinding.this.publishError(account, endpoint);
+        }
+    };
 
     public EfergyEngageBinding() {
     }
@@ -99,23 +237,263 @@ public class EfergyEngageBinding extends AbstractActiveBinding<EfergyEngageBindi
             refreshInterval = Long.parseLong(refreshIntervalString);
         }
 
-        String emailString = (String) configuration.get("email");
-        if (StringUtils.isNotBlank(emailString)) {
-            email = emailString;
+        String adaptiveString = (String) configuration.get("adaptive");
+        if (StringUtils.isNotBlank(adaptiveString)) {
+            adaptive = Boolean.parseBoolean(adaptiveString);
         }
 
-        String passwordString = (String) configuration.get("password");
-        if (StringUtils.isNotBlank(passwordString)) {
-            password = passwordString;
+        String minRefreshString = (String) configuration.get("minRefresh");
+        if (StringUtils.isNotBlank(minRefreshString)) {
+            minRefresh = Long.parseLong(minRefreshString);
         }
 
-        String offsetString = (String) configuration.get("offset");
-        if (StringUtils.isNotBlank(offsetString)) {
-            utcOffset = offsetString;
+        String maxRefreshString = (String) configuration.get("maxRefresh");
+        if (StringUtils.isNotBlank(maxRefreshString)) {
+            maxRefresh = Long.parseLong(maxRefreshString);
         }
+        String requestTimeoutString = (String) configuration.get("requestTimeout");
+        if (StringUtils.isNotBlank(requestTimeoutString)) {
+            requestTimeout = Long.parseLong(requestTimeoutString);
+        }
+
+        String cycleTimeoutString = (String) configuration.get("cycleTimeout");
+        if (StringUtils.isNotBlank(cycleTimeoutString)) {
+            cycleTimeout = Long.parseLong(cycleTimeoutString);
+        }
+
+        String connectTimeoutString = (String) configuration.get("connectTimeout");
+        if (StringUtils.isNotBlank(connectTimeoutString)) {
+            connectTimeout = Integer.parseInt(connectTimeoutString);
+        }
+
+        String readTimeoutString = (String) configuration.get("readTimeout");
+        if (StringUtils.isNotBlank(readTimeoutString)) {
+            readTimeout = Integer.parseInt(readTimeoutString);
+        }
+
+        //a new transport disconnects the requests of all accounts, so it is only replaced for new timeouts
+        if (!(transport instanceof EfergyEngageHttpTransport)
+                || !((EfergyEngageHttpTransport) transport).hasTimeouts(connectTimeout, readTimeout)) {
+            setTransport(new EfergyEngageHttpTransport(connectTimeout, readTimeout));
+        }
+
+        String breakerThresholdString = (String) configuration.get("breakerThreshold");
+        if (StringUtils.isNotBlank(breakerThresholdString)) {
+            breakerThreshold = Integer.parseInt(breakerThresholdString);
+        }
+
+        String breakerDelayString = (String) configuration.get("breakerDelay");
+        if (StringUtils.isNotBlank(breakerDelayString)) {
+            breakerDelay = Long.parseLong(breakerDelayString);
+        }
+
+        String breakerMaxDelayString = (String) configuration.get("breakerMaxDelay");
+        if (StringUtils.isNotBlank(breakerMaxDelayString)) {
+            breakerMaxDelay = Long.parseLong(breakerMaxDelayString);
+        }
+
+        String historySizeString = (String) configuration.get("historySize");
+        if (StringUtils.isNotBlank(historySizeString)) {
+            historySize = Integer.parseInt(historySizeString);
+        }
+
+        String sampleLogString = (String) configuration.get("sampleLog");
+        sampleLogDirectory = StringUtils.isNotBlank(sampleLogString) ? new File(sampleLogString.trim()) : null;
+
+        String sampleLogSizeString = (String) configuration.get("sampleLogSize");
+        if (StringUtils.isNotBlank(sampleLogSizeString)) {
+            sampleLogSize = Integer.parseInt(sampleLogSizeString);
+        }
+
+        String backfillGapString = (String) configuration.get("backfillGap");
+        if (StringUtils.isNotBlank(backfillGapString)) {
+            backfillGap = Long.parseLong(backfillGapString);
+        }
+
+        String backfillMaxString = (String) configuration.get("backfillMax");
+        if (StringUtils.isNotBlank(backfillMaxString)) {
+            backfillMax = Long.parseLong(backfillMaxString);
+        }
+
+        String integrateString = (String) configuration.get("integrate");
+        if (StringUtils.isNotBlank(integrateString)) {
+            integrate = Boolean.parseBoolean(integrateString);
+        }
+
+        String reconcileIntervalString = (String) configuration.get("reconcileInterval");
+        if (StringUtils.isNotBlank(reconcileIntervalString)) {
+            reconcileInterval = Long.parseLong(reconcileIntervalString);
+        }
+
+        String integrationMaxGapString = (String) configuration.get("integrationMaxGap");
+        if (StringUtils.isNotBlank(integrationMaxGapString)) {
+            integrationMaxGap = Long.parseLong(integrationMaxGapString);
+        }
+
+        String anomalyAlphaString = (String) configuration.get("anomaly.alpha");
+        if (StringUtils.isNotBlank(anomalyAlphaString)) {
+            anomalyAlpha = Double.parseDouble(anomalyAlphaString);
+        }
+
+        String anomalyThresholdString = (String) configuration.get("anomaly.threshold");
+        if (StringUtils.isNotBlank(anomalyThresholdString)) {
+            anomalyThreshold = Double.parseDouble(anomalyThresholdString);
+        }
+
+        String baselineAlphaString = (String) configuration.get("anomaly.baselineAlpha");
+        if (StringUtils.isNotBlank(baselineAlphaString)) {
+            baselineAlpha = Double.parseDouble(baselineAlphaString);
+        }
+
+        String baselineThresholdString = (String) configuration.get("anomaly.baselineThreshold");
+        if (StringUtils.isNotBlank(baselineThresholdString)) {
+            baselineThreshold = Double.parseDouble(baselineThresholdString);
+        }
+
+        String baselineHoldString = (String) configuration.get("anomaly.baselineHold");
+        if (StringUtils.isNotBlank(baselineHoldString)) {
+            baselineHold = Long.parseLong(baselineHoldString);
+        }
+
+        String minDeviationString = (String) configuration.get("anomaly.minDeviation");
+        if (StringUtils.isNotBlank(minDeviationString)) {
+            minDeviation = Double.parseDouble(minDeviationString);
+        }
+
+        String snapshotString = (String) configuration.get("snapshot");
+        snapshotDirectory = StringUtils.isNotBlank(snapshotString) ? new File(snapshotString.trim()) : null;
+
+        String importDirectoryString = (String) configuration.get("import.directory");
+        String importFromString = (String) configuration.get("import.from");
+        String importToString = (String) configuration.get("import.to");
+        importDirectory = null;
+        if (StringUtils.isNotBlank(importDirectoryString) && StringUtils.isNotBlank(importFromString)) {
+            try {
+                importFrom = parseTime(importFromString);
+                //0 lets the importer end the range at the start of the day it began, kept in its checkpoint
+                importTo = StringUtils.isNotBlank(importToString) ? parseTime(importToString) : 0;
+                importDirectory = new File(importDirectoryString.trim());
+            } catch (ParseException e) {
+                logger.error("Cannot parse Efergy Engage import range, import disabled: {}", e.getMessage());
+            }
+        }
+
+        String importIntervalString = (String) configuration.get("import.interval");
+        if (StringUtils.isNotBlank(importIntervalString)) {
+            importInterval = Long.parseLong(importIntervalString);
+        }
+
+        try {
+            tariff = EfergyEngageTariff.parse(configuration);
+        } catch (IllegalArgumentException e) {
+            logger.error("Cannot parse Efergy Engage tariff, costs disabled: {}", e.getMessage());
+            tariff = null;
+        }
+
+        ttls.put(EfergyEngageBindingType.INSTANT, readTtl(configuration, EfergyEngageBindingType.INSTANT, 0));
+        ttls.put(EfergyEngageBindingType.SENSOR, readTtl(configuration, EfergyEngageBindingType.SENSOR, 0));
+        ttls.put(EfergyEngageBindingType.DAY_TOTAL, readTtl(configuration, EfergyEngageBindingType.DAY_TOTAL, 60000));
+        ttls.put(EfergyEngageBindingType.WEEK_TOTAL, readTtl(configuration, EfergyEngageBindingType.WEEK_TOTAL, 300000));
+        ttls.put(EfergyEngageBindingType.MONTH_TOTAL, readTtl(configuration, EfergyEngageBindingType.MONTH_TOTAL, 900000));
+        ttls.put(EfergyEngageBindingType.YEAR_TOTAL, readTtl(configuration, EfergyEngageBindingType.YEAR_TOTAL, 3600000));
+
+        readAccounts(configuration);
         // read further config parameters here ...
     }
 
+    /**
+     * Creates, updates and removes the accounts. The default account is configured by email,
+     * password and offset, named accounts by <account>.email, <account>.password and <account>.offset.
+     * All of them read from url (optional, defaults to the Efergy Engage server) unless <account>.url
+     * overrides it.
+     */
+    private void readAccounts(final Map<String, Object> configuration) {
+        Set<String> names = new HashSet<>();
+        for (String key : configuration.keySet()) {
+            if (key.equals("email")) {
+                names.add(DEFAULT_ACCOUNT);
+            } else if (key.endsWith(".email")) {
+                names.add(key.substring(0, key.length() - ".email".length()));
+            }
+        }
+
+        for (String name : accounts.keySet()) {
+            if (!names.contains(name)) {
+                unregisterMetrics(name);
+                accounts.remove(name).close();
+            }
+        }
+
+        String urlString = (String) configuration.get("url");
+        String url = StringUtils.isNotBlank(urlString) ? StringUtils.removeEnd(urlString.trim(), "/") : EFERGY_URL;
+
+        // a token older than tokenLifetime ms is renewed before use (optional, 0 renews rejected tokens only)
+        String tokenLifetimeString = (String) configuration.get("tokenLifetime");
+        long tokenLifetime = StringUtils.isNotBlank(tokenLifetimeString) ? Long.parseLong(tokenLifetimeString) : 0;
+
+        for (String name : names) {
+            String prefix = DEFAULT_ACCOUNT.equals(name) && configuration.containsKey("email") ? "" : name + ".";
+            String email = (String) configuration.get(prefix + "email");
+            String password = (String) configuration.get(prefix + "password");
+            if (StringUtils.isBlank(email) || StringUtils.isBlank(password)) {
+                logger.error("Efergy Engage account {} needs both {}email and {}password, account ignored", name,
+                        prefix, prefix);
+                continue;
+            }
+            String offset = (String) configuration.get(prefix + "offset");
+            String accountUrl = (String) configuration.get(name + ".url");
+
+            EfergyEngageAccount account = accounts.get(name);
+            boolean created = account == null;
+            if (created) {
+                account = new EfergyEngageAccount(name, ttls, accountListener);
+                accounts.put(name, account);
+                registerMetrics(account);
+            }
+            boolean changed = account.configure(StringUtils.isNotBlank(accountUrl)
+                    ? StringUtils.removeEnd(accountUrl.trim(), "/") : url,
+                    email, password, StringUtils.isNotBlank(offset) ? offset : null);
+            account.setTransport(transport);
+            account.setTimeouts(requestTimeout, cycleTimeout);
+            account.setTokenLifetime(tokenLifetime);
+            account.setScheduler(adaptive, minRefresh, maxRefresh, refreshInterval);
+            account.setCircuitBreaker(breakerThreshold, breakerDelay, breakerMaxDelay);
+            account.setHistorySize(historySize);
+            account.setIntegration(integrate, reconcileInterval, integrationMaxGap);
+            account.setSampleLog(sampleLogDirectory != null
+                    ? new File(sampleLogDirectory, "efergyengage-" + name + ".samples") : null,
+                    sampleLogSize, backfillGap, backfillMax);
+            account.setTariff(tariff, integrationMaxGap);
+            account.setAnomalyDetection(anomalyAlpha, anomalyThreshold, baselineAlpha, baselineThreshold,
+                    baselineHold, minDeviation);
+            account.setImport(importDirectory != null
+                    ? new File(importDirectory, "efergyengage-" + name + ".csv") : null,
+                    importFrom, importTo, importInterval);
+            account.setSnapshot(snapshotDirectory != null
+                    ? new File(snapshotDirectory, "efergyengage-" + name + ".snapshot") : null);
+            //a new account starts from its snapshot if it has one, otherwise any change is read right away
+            if (created && account.restoreSnapshot()) {
+                continue;
+            }
+            if (changed) {
+                account.poll();
+            }
+        }
+    }
+
+    private static long parseTime(String time) throws ParseException {
+        time = time.trim();
+        if (StringUtils.isNumeric(time)) {
+            return Long.parseLong(time);
+        }
+        return new SimpleDateFormat(time.contains("T") ? "yyyy-MM-dd'T'HH:mm" : "yyyy-MM-dd").parse(time).getTime();
+    }
+
+    private long readTtl(final Map<String, Object> configuration, EfergyEngageBindingType type, long defaultTtl) {
+        String ttlString = (String) configuration.get("ttl." + type.getType());
+        return StringUtils.isNotBlank(ttlString) ? Long.parseLong(ttlString) : defaultTtl;
+    }
+
     /**
      * Called by the SCR when the configuration of a binding has been changed through the ConfigAdmin service.
      *
@@ -124,6 +502,7 @@ public class EfergyEngageBinding extends AbstractActiveBinding<EfergyEngageBindi
     public void modified(final Map<String, Object> configuration) {
         // update the internal configuration accordingly
         if (configuration != null) {
+            //requests of accounts whose settings change are aborted by EfergyEngageAccount.configure
             readConfiguration(configuration);
         }
     }
@@ -147,14 +526,71 @@ public class EfergyEngageBinding extends AbstractActiveBinding<EfergyEngageBindi
         this.bundleContext = null;
         // deallocate resources here that are no longer needed and
         // should be reset when activating this binding again
+        for (EfergyEngageAccount account : accounts.values()) {
+            unregisterMetrics(account.getName());
+            account.close();
+        }
+        accounts.clear();
+        setTransport(null);
+    }
+
+    /**
+     * Replaces the transport used to reach the EfergyEngage server, e.g. by a stub for tests.
+     *
+     * @param transport new transport, null only releases the current one
+     */
+    void setTransport(EfergyEngageTransport transport) {
+        if (this.transport != null) {
+            //requests running on the old transport are aborted with it, not counted as failures
+            for (EfergyEngageAccount account : accounts.values()) {
+                account.cancelRequests();
+            }
+            this.transport.close();
+        }
+        this.transport = transport;
+        for (EfergyEngageAccount account : accounts.values()) {
+            account.setTransport(transport);
+        }
+    }
+
+    /**
+     * Registers the metrics of the account as MBean org.openhab.binding.efergyengage:type=Metrics,account=&lt;name&gt;
+     */
+    private void registerMetrics(EfergyEngageAccount account) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getMetricsName(account.getName());
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(account.getMetrics(), objectName);
+        } catch (JMException | RuntimeException e) {
+            logger.warn("Cannot register Efergy Engage metrics of account {} in JMX: {}", account.getName(),
+                    e.toString());
+        }
+    }
+
+    private void unregisterMetrics(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getMetricsName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException | RuntimeException e) {
+            logger.debug("Cannot unregister Efergy Engage metrics of account {} from JMX: {}", name, e.toString());
+        }
     }
 
-    public void setItemRegistry(ItemRegistry itemRegistry) {
-        this.itemRegistry = itemRegistry;
+    private static ObjectName getMetricsName(String name) throws JMException {
+        return new ObjectName("org.openhab.binding.efergyengage:type=Metrics,account=" + ObjectName.quote(name));
     }
 
-    public void unsetItemRegistry(ItemRegistry itemRegistry) {
-        this.itemRegistry = null;
+    /**
+     * @return the configured accounts, e.g. for the load test harness to wait for their cycles
+     */
+    Collection<EfergyEngageAccount> getAccounts() {
+        return accounts.values();
     }
 
     /**
@@ -162,7 +598,8 @@ public class EfergyEngageBinding extends AbstractActiveBinding<EfergyEngageBindi
      */
     @Override
     protected long getRefreshInterval() {
-        return refreshInterval;
+        //in adaptive mode the refresh thread only ticks, the scheduler decides when to poll
+        return adaptive ? ADAPTIVE_TICK : refreshInterval;
     }
 
     /**
@@ -186,186 +623,215 @@ public class EfergyEngageBinding extends AbstractActiveBinding<EfergyEngageBindi
             return;
         }
 
-        if (token.equals("")) {
-            login();
-            if (token.equals(""))
-                return;
+        //every account polls on its own worker, a busy account does not hold up the others
+        for (EfergyEngageAccount account : accounts.values()) {
+            if (!account.poll()) {
+                logger.debug("Efergy Engage account {} is still busy, refresh cycle skipped", account.getName());
+            }
         }
+    }
 
-        EfergyEngageMeasurement instant = null;
-        EfergyEngageMeasurement dayTotal = null;
-        EfergyEngageMeasurement weekTotal = null;
-        EfergyEngageMeasurement monthTotal = null;
-        EfergyEngageMeasurement yearTotal = null;
-
+    /**
+     * Collects the endpoints needed by the items bound to the account, each endpoint only once.
+     */
+    private Set<EfergyEngageBindingType> planEndpoints(EfergyEngageAccount account) {
+        Set<EfergyEngageBindingType> endpoints = EnumSet.noneOf(EfergyEngageBindingType.class);
         for (final EfergyEngageBindingProvider provider : providers) {
-            for (final String itemName : provider.getItemNames()) {
-                String type = provider.getItemType(itemName);
-                State newValue = null;
-                State oldValue = null;
-                try {
-                    oldValue = itemRegistry.getItem(itemName).getState();
-
-
-                    switch (type) {
-                        case INSTANT:
-                            if (instant == null)
-                                instant = readInstant();
-                            newValue = new DecimalType(instant.getValue());
-                            if (!oldValue.equals(newValue)) {
-                                eventPublisher.postUpdate(itemName, newValue);
-                            }
-                            break;
-                        case LAST_MEASUREMENT:
-                            if (instant == null)
-                                instant = readInstant();
-                            Calendar cal = Calendar.getInstance();
-                            cal.setTime(new java.util.Date(instant.getMilis()));
-                            eventPublisher.postUpdate(itemName, new DateTimeType(cal));
-                            break;
-                        case DAY_TOTAL:
-                            if (dayTotal == null)
-                                dayTotal = readEnergy("day");
-                            newValue = new StringType((dayTotal.getValue() + " " + dayTotal.getUnit()));
-                            if (!oldValue.equals(newValue)) {
-                                eventPublisher.postUpdate(itemName, newValue);
-                            }
-                            break;
-                        case WEEK_TOTAL:
-                            if (weekTotal == null)
-                                weekTotal = readEnergy("week");
-                            newValue = new StringType((weekTotal.getValue() + " " + weekTotal.getUnit()));
-                            if (!oldValue.equals(newValue)) {
-                                eventPublisher.postUpdate(itemName, newValue);
-                            }
-                            break;
-                        case MONTH_TOTAL:
-                            if (monthTotal == null)
-                                monthTotal = readEnergy("month");
-                            newValue = new StringType((monthTotal.getValue() + " " + monthTotal.getUnit()));
-                            if (!oldValue.equals(newValue)) {
-                                eventPublisher.postUpdate(itemName, newValue);
-                            }
-                            break;
-                        case YEAR_TOTAL:
-                            if (yearTotal == null)
-                                yearTotal = readEnergy("year");
-                            newValue = new StringType((yearTotal.getValue() + " " + yearTotal.getUnit()));
-                            if (!oldValue.equals(newValue)) {
-                                eventPublisher.postUpdate(itemName, newValue);
-                            }
-                            break;
-                    }
-                } catch (ItemNotFoundException e) {
-                    logger.error("Cannot find item " + itemName + " in item registry!");
+            for (EfergyEngageBindingType type : EfergyEngageBindingType.values()) {
+                if (type.getEndpoint() != null && provider.getItemNames(account.getName(), type).length > 0) {
+                    endpoints.add(type.getEndpoint());
                 }
             }
         }
+        return endpoints;
     }
 
-    private void login() {
-        String url = null;
-        StringBuilder body = null;
-
-        try {
-            url = EFERGY_URL + "/mobile/get_token?device=android&username=" + email
-                    + "&password=" + password;
-
-            URL tokenUrl = new URL(url);
-            URLConnection connection = tokenUrl.openConnection();
-
-            //get token
-            InputStream response = connection.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(response));
-            String line = reader.readLine();
-            JsonObject jobject = parser.parse(line).getAsJsonObject();
-            String status = jobject.get("status").getAsString();
-
-            if (status.equals("ok")) {
-                token = jobject.get("token").getAsString();
-                logger.debug("Efergy token: " + token);
-            } else {
-                logger.debug("Efergy login response: " + line);
-                throw new EfergyEngageException(jobject.get("desc").getAsString());
+    /**
+     * Posts the measurements of the account to the items routed to them by the binding providers.
+     * Package-private for the benchmarks.
+     */
+    void publish(EfergyEngageAccount account, Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements) {
+        for (EfergyEngageBindingType type : EfergyEngageBindingType.values()) {
+            EfergyEngageMeasurement measurement = measurements.get(type.getEndpoint());
+            if (measurement == null) {
+                continue;
+            }
+            for (final EfergyEngageBindingProvider provider : providers) {
+                for (final String itemName : provider.getItemNames(account.getName(), type)) {
+                    publish(account, provider, type, itemName, measurement);
+                }
             }
-        } catch (MalformedURLException e) {
-            logger.error("The URL '" + url + "' is malformed: " + e.toString());
-        } catch (Exception e) {
-            logger.error("Cannot get Efergy Engage token: " + e.toString());
         }
     }
 
-    private EfergyEngageMeasurement readInstant() {
-        String url = null;
-        int instant;
-        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
-
-        try {
-            url = EFERGY_URL + "/mobile_proxy/getInstant?token=" + token;
-            URL valueUrl = new URL(url);
-            URLConnection connection = valueUrl.openConnection();
-
-            //read response
-            InputStream response = connection.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(response));
-            StringBuilder body = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                body.append(line + "\n");
+    /**
+     * Posts the metrics of the account to its metric items.
+     */
+    private void publishMetrics(EfergyEngageAccount account) {
+        EfergyEngageMetrics metrics = account.getMetrics();
+        for (final EfergyEngageBindingProvider provider : providers) {
+            for (final String itemName : provider.getItemNames(account.getName(), EfergyEngageBindingType.METRIC)) {
+                double value = metrics.getValue(provider.getItemMetric(itemName), provider.getItemEndpoint(itemName),
+                        provider.getItemPercentile(itemName));
+                if (published.update(itemName, value)) {
+                    eventPublisher.postUpdate(itemName, toDecimal(value));
+                }
             }
+        }
+    }
 
-            //read value
-            parser = new JsonParser();
-            JsonObject jobject = parser.parse(body.toString()).getAsJsonObject();
-            if (jobject != null && jobject.get("reading") != null) {
-                instant = jobject.get("reading").getAsInt();
-                logger.debug("Efergy reading: " + instant);
-                measurement.setValue(instant);
-                measurement.setMilis(jobject.get("last_reading_time").getAsLong());
+    /**
+     * Marks the items served by the endpoint as undefined instead of leaving their last value,
+     * the next value read is posted again.
+     */
+    private void publishError(EfergyEngageAccount account, EfergyEngageBindingType endpoint) {
+        for (EfergyEngageBindingType type : EfergyEngageBindingType.values()) {
+            if (type.getEndpoint() != endpoint) {
+                continue;
             }
-        } catch (MalformedURLException e) {
-            logger.error("The URL '" + url + "' is malformed: " + e.toString());
-        } catch (Exception e) {
-            logger.error("Cannot get Efergy Engage data: " + e.toString());
+            for (final EfergyEngageBindingProvider provider : providers) {
+                for (final String itemName : provider.getItemNames(account.getName(), type)) {
+                    published.remove(itemName);
+                    eventPublisher.postUpdate(itemName, UnDefType.UNDEF);
+                }
+            }
+        }
+    }
+
+    private void publish(EfergyEngageAccount account, EfergyEngageBindingProvider provider, EfergyEngageBindingType type,
+                         String itemName, EfergyEngageMeasurement measurement) {
+        switch (type) {
+            case INSTANT:
+                if (published.update(itemName, measurement.getValue(), null)) {
+                    eventPublisher.postUpdate(itemName, toDecimal(measurement.getValue()));
+                }
+                break;
+            case SENSOR:
+                //a measurement restored from the snapshot has no table, the next summary serves the item
+                if (measurement instanceof EfergyEngageSensorTable) {
+                    float value = ((EfergyEngageSensorTable) measurement).getValue(provider.getItemSensor(itemName),
+                            provider.getItemPhase(itemName));
+                    if (!Float.isNaN(value) && published.update(itemName, value, null)) {
+                        eventPublisher.postUpdate(itemName, toDecimal(value));
+                    }
+                }
+                break;
+            case LAST_MEASUREMENT:
+                if (published.update(itemName, measurement.getMilis())) {
+                    Calendar cal = Calendar.getInstance();
+                    cal.setTimeInMillis(measurement.getMilis());
+                    eventPublisher.postUpdate(itemName, new DateTimeType(cal));
+                }
+                break;
+            case INSTANT_MIN:
+            case INSTANT_MAX:
+            case INSTANT_AVG:
+            case INSTANT_PERCENTILE:
+                float aggregate = aggregate(account.getHistory(), type, provider.getItemWindow(itemName),
+                        provider.getItemPercentile(itemName), measurement.getMilis());
+                if (!Float.isNaN(aggregate) && published.update(itemName, aggregate, null)) {
+                    eventPublisher.postUpdate(itemName, toDecimal(aggregate));
+                }
+                break;
+            case DAY_TOTAL:
+            case WEEK_TOTAL:
+            case MONTH_TOTAL:
+            case YEAR_TOTAL:
+                if (published.update(itemName, measurement.getValue(), measurement.getUnit())) {
+                    eventPublisher.postUpdate(itemName, provider.isItemNumeric(itemName)
+                            ? toDecimal(measurement.getValue())
+                            : new StringType(measurement.getValue() + " " + measurement.getUnit()));
+                }
+                break;
+            case DAY_COST:
+            case MONTH_COST:
+                EfergyEngageCostMeter meter = account.getCostMeter();
+                double cost = meter == null ? Double.NaN
+                        : type == EfergyEngageBindingType.DAY_COST ? meter.getDayCost() : meter.getMonthCost();
+                if (!Double.isNaN(cost) && published.update(itemName, cost)) {
+                    eventPublisher.postUpdate(itemName, toDecimal(cost));
+                }
+                break;
+            case ANOMALY:
+                //only posted when the detector state changes
+                double anomaly = account.getAnomalyDetector().getAnomaly();
+                if (!Double.isNaN(anomaly) && published.update(itemName, anomaly)) {
+                    eventPublisher.postUpdate(itemName, provider.isItemNumeric(itemName)
+                            ? toDecimal(anomaly) : anomaly > 0 ? OnOffType.ON : OnOffType.OFF);
+                }
+                break;
+            case BASELINE_DEVIATION:
+                double deviation = account.getAnomalyDetector().getBaselineDeviation();
+                if (!Double.isNaN(deviation) && published.update(itemName, deviation)) {
+                    eventPublisher.postUpdate(itemName, toDecimal(deviation));
+                }
+                break;
         }
+    }
 
-        return measurement;
+    /**
+     * @return the reading as posted, its shortest decimal form, e.g. 12.34 rather than the 12.340000152587890625
+     * of the float widened to double
+     */
+    private static DecimalType toDecimal(float value) {
+        return new DecimalType(new BigDecimal(Float.toString(value)));
     }
 
-    private EfergyEngageMeasurement readEnergy(String period) {
-        String url = null;
-        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
+    /**
+     * @return the value as posted, its shortest decimal form rather than the exact binary fraction
+     */
+    private static DecimalType toDecimal(double value) {
+        return new DecimalType(BigDecimal.valueOf(value));
+    }
 
-        try {
-            url = EFERGY_URL + "/mobile_proxy/getEnergy?token=" + token + "&period=" + period + "&offset=" + utcOffset;
-            URL valueUrl = new URL(url);
-            URLConnection connection = valueUrl.openConnection();
-
-            //read response
-            InputStream response = connection.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(response));
-            StringBuilder body = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                body.append(line + "\n");
-            }
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void bindingChanged(BindingProvider provider, String itemName) {
+        super.bindingChanged(provider, itemName);
+        //a new or changed binding has to get its value published again, the last one known right away
+        published.remove(itemName);
+        publishLatest();
+    }
 
-            //read value
-            JsonObject jobject = parser.parse(body.toString()).getAsJsonObject();
-            if (jobject != null && jobject.get("sum") != null && jobject.get("units") != null) {
-                String energy = jobject.get("sum").getAsString();
-                String units = jobject.get("units").getAsString();
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void allBindingsChanged(BindingProvider provider) {
+        super.allBindingsChanged(provider);
+        published.clear();
+        publishLatest();
+    }
 
-                logger.debug("Efergy reading for " + period + " period: " + energy + " " + units);
-                measurement.setValue(Float.valueOf(energy.trim()).floatValue());
-                measurement.setUnit(units);
+    /**
+     * Publishes the last measurements of the accounts, so items bound after a start do not wait for a cycle.
+     */
+    private void publishLatest() {
+        if (eventPublisher == null) {
+            return;
+        }
+        for (EfergyEngageAccount account : accounts.values()) {
+            Map<EfergyEngageBindingType, EfergyEngageMeasurement> latest = account.getLatest();
+            if (!latest.isEmpty()) {
+                publish(account, latest);
             }
-        } catch (MalformedURLException e) {
-            logger.error("The URL '" + url + "' is malformed: " + e.toString());
-        } catch (Exception e) {
-            logger.error("Cannot get Efergy Engage data: " + e.toString());
         }
-        return measurement;
+    }
+
+    private float aggregate(EfergyEngageHistory history, EfergyEngageBindingType type, long window, int percentile,
+                            long now) {
+        switch (type) {
+            case INSTANT_MIN:
+                return history.getMin(window, now);
+            case INSTANT_MAX:
+                return history.getMax(window, now);
+            case INSTANT_AVG:
+                return history.getAverage(window, now);
+            default:
+                return history.getPercentile(percentile, window, now);
+        }
     }
 
     /**
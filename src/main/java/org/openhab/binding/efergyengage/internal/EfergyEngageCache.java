@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache of the last measurement read from every endpoint. Keys are the binding types reading
+ * the endpoint, each of them stands for one endpoint and period (e.g. DAY_TOTAL is getEnergy
+ * for the day period).
+ * <p>
+ * An entry is fresh for its ttl. For another ttl it is stale: it is still served while
+ * a single background refresh replaces it. Older entries are not served at all.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageCache {
+
+    private final Map<EfergyEngageBindingType, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<EfergyEngageBindingType, Long> ttls;
+
+    EfergyEngageCache(Map<EfergyEngageBindingType, Long> ttls) {
+        this.ttls = ttls;
+    }
+
+    /**
+     * Returns the entry still usable at the given time or null if the endpoint has to be read.
+     */
+    Entry get(EfergyEngageBindingType key, long now) {
+        Entry entry = entries.get(key);
+        if (entry == null || now - entry.time >= 2 * getTtl(key)) {
+            return null;
+        }
+        return entry;
+    }
+
+    boolean isFresh(EfergyEngageBindingType key, Entry entry, long now) {
+        return now - entry.time < getTtl(key);
+    }
+
+    void put(EfergyEngageBindingType key, EfergyEngageMeasurement measurement) {
+        entries.put(key, new Entry(measurement, System.currentTimeMillis()));
+    }
+
+    void remove(EfergyEngageBindingType key) {
+        entries.remove(key);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private long getTtl(EfergyEngageBindingType key) {
+        Long ttl = ttls.get(key);
+        return ttl != null ? ttl : 0;
+    }
+
+    static class Entry {
+        private final EfergyEngageMeasurement measurement;
+        private final long time;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(EfergyEngageMeasurement measurement, long time) {
+            this.measurement = measurement;
+            this.time = time;
+        }
+
+        EfergyEngageMeasurement getMeasurement() {
+            return measurement;
+        }
+
+        /**
+         * @return true only for the caller which should refresh this entry
+         */
+        boolean startRefresh() {
+            return refreshing.compareAndSet(false, true);
+        }
+
+        void endRefresh() {
+            refreshing.set(false);
+        }
+    }
+}
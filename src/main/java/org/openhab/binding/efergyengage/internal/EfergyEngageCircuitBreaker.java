@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.util.Random;
+
+/**
+ * Circuit breaker of one endpoint. After threshold consecutive failures it opens and requests are
+ * not sent at all. Once the jittered backoff has passed, a single probe request is let through
+ * (half-open): its success closes the breaker, its failure opens it again for twice as long, up to
+ * the maximum delay.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageCircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Random random = new Random();
+
+    private int threshold = 3;
+    private long delay = 10000;
+    private long maxDelay = 600000;
+    private long probeTimeout = 10000;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private int opened;
+    private long retryAt;
+
+    /**
+     * @param threshold consecutive failures opening the breaker
+     * @param delay backoff after the first opening in ms, doubled with every failed probe
+     * @param maxDelay upper limit of the backoff in ms
+     * @param probeTimeout time in ms after which a probe which never reported back is given up
+     */
+    synchronized void configure(int threshold, long delay, long maxDelay, long probeTimeout) {
+        this.threshold = Math.max(1, threshold);
+        this.delay = delay;
+        this.maxDelay = Math.max(delay, maxDelay);
+        this.probeTimeout = probeTimeout;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if a request may be sent now, in half-open state only for the single probe
+     */
+    synchronized boolean allowRequest(long now) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        //when half-open, the probe is given up after probeTimeout as it could have been cancelled before it ran
+        if (now < retryAt) {
+            return false;
+        }
+        state = State.HALF_OPEN;
+        retryAt = now + probeTimeout;
+        return true;
+    }
+
+    /**
+     * @return true if the request closed an open or half-open breaker
+     */
+    synchronized boolean onSuccess() {
+        boolean recovered = state != State.CLOSED;
+        state = State.CLOSED;
+        failures = 0;
+        opened = 0;
+        return recovered;
+    }
+
+    /**
+     * @return true if the failure opened a closed breaker
+     */
+    synchronized boolean onFailure(long now) {
+        switch (state) {
+            case CLOSED:
+                if (++failures < threshold) {
+                    return false;
+                }
+                open(now);
+                return true;
+            case HALF_OPEN:
+                open(now);
+                return false;
+            default:
+                //late failure of a request sent before the breaker opened
+                return false;
+        }
+    }
+
+    private void open(long now) {
+        //equal jitter: between half and the full backoff, so that accounts do not retry in lockstep
+        long backoff = Math.min(maxDelay, delay << Math.min(opened, 20));
+        opened++;
+        state = State.OPEN;
+        retryAt = now + backoff / 2 + (long) (random.nextDouble() * (backoff - backoff / 2));
+    }
+
+    synchronized long getRetryAt() {
+        return retryAt;
+    }
+}
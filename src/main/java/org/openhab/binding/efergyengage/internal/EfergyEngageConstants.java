@@ -6,10 +6,12 @@ package org.openhab.binding.efergyengage.internal;
 final public class EfergyEngageConstants {
     //Constants
     final public static String EFERGY_URL = "https://engage.efergy.com";
-    final public static String LAST_MEASUREMENT = "lastmeasurement";
-    final public static String INSTANT = "instant";
-    final public static String DAY_TOTAL = "daytotal";
-    final public static String WEEK_TOTAL = "weektotal";
-    final public static String MONTH_TOTAL = "monthtotal";
-    final public static String YEAR_TOTAL = "yeartotal";
+    final public static String DEFAULT_ACCOUNT = "default";
+    final public static int MAX_CONCURRENT_REQUESTS = 5;
+    final public static long ADAPTIVE_TICK = 1000;
+    final public static int HISTORY_SIZE = 8640;
+    final public static int SAMPLE_LOG_SIZE = 100000;
+    final public static long BACKFILL_CHUNK = 21600000;
+    final public static long SNAPSHOT_INTERVAL = 300000;
+    final public static long METRICS_INTERVAL = 300000;
 }
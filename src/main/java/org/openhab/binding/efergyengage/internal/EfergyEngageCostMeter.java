@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.util.Calendar;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+/**
+ * Turns instant power readings into the energy cost of the day and of the month. The energy
+ * between two readings is taken by the trapezoidal rule and priced at the tariff rate; the
+ * interval is only split where it passes a precomputed band, day or month boundary, so each
+ * reading costs O(1). Readings further than maxGap from the previous one are not priced. The
+ * tier surcharge follows the consumption of the month at the start of each interval.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageCostMeter {
+
+    //W * ms in kWh
+    private static final double WATT_MS_PER_KWH = 3600000000.0;
+    private static final long MINUTE = 60000;
+
+    private final EfergyEngageTariff tariff;
+    private final long maxGap;
+    private final TimeZone zone;
+
+    private double dayCost;
+    private double monthCost;
+    private double monthEnergy;
+    //days of the month started so far, each paying the standing charge
+    private int days;
+    private long dayStart;
+    private long dayEnd;
+    private long monthEnd;
+    private int segment;
+    private long segmentEnd;
+    private long lastTime;
+    private float lastWatts;
+
+    /**
+     * @param utcOffset Efergy offset of the local time in minutes, e.g. -60 for UTC+1
+     */
+    EfergyEngageCostMeter(EfergyEngageTariff tariff, long maxGap, int utcOffset) {
+        this.tariff = tariff;
+        this.maxGap = maxGap;
+        this.zone = new SimpleTimeZone(-utcOffset * 60000, "Efergy");
+    }
+
+    /**
+     * @return true if the meter was created with these settings, so that its costs can be kept
+     */
+    boolean hasSettings(EfergyEngageTariff tariff, long maxGap, int utcOffset) {
+        return this.tariff.equals(tariff) && this.maxGap == maxGap && zone.getRawOffset() == -utcOffset * 60000;
+    }
+
+    /**
+     * @return a meter with the settings of this one and no costs yet
+     */
+    EfergyEngageCostMeter emptyCopy() {
+        return new EfergyEngageCostMeter(tariff, maxGap, -zone.getRawOffset() / 60000);
+    }
+
+    synchronized void add(long time, float watts) {
+        if (time <= lastTime) {
+            return;
+        }
+        if (lastTime == 0 || time - lastTime > maxGap) {
+            //energy during a gap is unknown, only the calendar is moved on
+            if (time >= dayEnd) {
+                startDay(time);
+            } else {
+                seek(time);
+            }
+        } else {
+            long from = lastTime;
+            double fromWatts = lastWatts;
+            double slope = (watts - lastWatts) / (double) (time - lastTime);
+            while (from < time) {
+                long to = Math.min(time, segmentEnd);
+                double toWatts = lastWatts + slope * (to - lastTime);
+                double energy = (fromWatts + toWatts) / 2.0 * (to - from) / WATT_MS_PER_KWH;
+                double cost = energy * (tariff.getRate(segment) + tariff.getSurcharge(monthEnergy));
+                dayCost += cost;
+                monthCost += cost;
+                monthEnergy += energy;
+                if (to == segmentEnd) {
+                    if (to == dayEnd) {
+                        startDay(to);
+                    } else {
+                        segment++;
+                        segmentEnd = dayStart + tariff.getSegmentEnd(segment) * MINUTE;
+                    }
+                }
+                from = to;
+                fromWatts = toWatts;
+            }
+        }
+        lastTime = time;
+        lastWatts = watts;
+    }
+
+    /**
+     * @return cost of the day including its standing charge, NaN before the first reading
+     */
+    synchronized double getDayCost() {
+        return lastTime == 0 ? Double.NaN : dayCost + tariff.getStandingCharge();
+    }
+
+    /**
+     * @return cost of the month including the standing charge of its days, NaN before the first reading
+     */
+    synchronized double getMonthCost() {
+        return lastTime == 0 ? Double.NaN : monthCost + tariff.getStandingCharge() * days;
+    }
+
+    /**
+     * Moves the calendar to the day holding time, restarting the month when it has passed.
+     */
+    private void startDay(long time) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStart = calendar.getTimeInMillis();
+        dayCost = 0;
+        if (time >= monthEnd) {
+            monthCost = 0;
+            monthEnergy = 0;
+            Calendar month = (Calendar) calendar.clone();
+            month.set(Calendar.DAY_OF_MONTH, 1);
+            month.add(Calendar.MONTH, 1);
+            monthEnd = month.getTimeInMillis();
+        }
+        days = calendar.get(Calendar.DAY_OF_MONTH);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        dayEnd = calendar.getTimeInMillis();
+        seek(time);
+    }
+
+    /**
+     * Moves to the rate segment holding time within the current day.
+     */
+    private void seek(long time) {
+        segment = tariff.segment((int) ((time - dayStart) / MINUTE));
+        segmentEnd = dayStart + tariff.getSegmentEnd(segment) * MINUTE;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+/**
+ * Integrates instant power over time into day, week, month and year energy totals in kWh, so that
+ * the totals follow every instant reading without their own getEnergy requests. Readings are
+ * combined by the trapezoidal rule, a reading further than maxGap from the previous one is not
+ * integrated. Totals restart at the calendar boundaries of the Efergy offset, weeks starting on
+ * Monday.
+ * <p>
+ * A total is only served after it has been reconciled with the server sum, and is reconciled
+ * again every reconcileInterval ms or after a gap in the readings. A total integrated from its
+ * period start on is exact and counts as reconciled.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageEnergyIntegrator {
+
+    private static final EfergyEngageBindingType[] TOTALS = {EfergyEngageBindingType.DAY_TOTAL,
+            EfergyEngageBindingType.WEEK_TOTAL, EfergyEngageBindingType.MONTH_TOTAL, EfergyEngageBindingType.YEAR_TOTAL};
+    private static final String KWH = "kWh";
+    //W * ms in kWh
+    private static final double WATT_MS_PER_KWH = 3600000000.0;
+
+    private final long reconcileInterval;
+    private final long maxGap;
+    private final TimeZone zone;
+
+    private final double[] totals = new double[TOTALS.length];
+    private final long[] periodEnds = new long[TOTALS.length];
+    //time of the last reconciliation, 0 if the total is unknown
+    private final long[] reconciled = new long[TOTALS.length];
+    private long lastTime;
+    private float lastWatts;
+
+    /**
+     * @param utcOffset Efergy offset of the local time in minutes, e.g. -60 for UTC+1
+     */
+    EfergyEngageEnergyIntegrator(long reconcileInterval, long maxGap, int utcOffset) {
+        this.reconcileInterval = reconcileInterval;
+        this.maxGap = maxGap;
+        this.zone = new SimpleTimeZone(-utcOffset * 60000, "Efergy");
+    }
+
+    /**
+     * @return true if the integrator was created with these settings, so that its totals can be kept
+     */
+    boolean hasSettings(long reconcileInterval, long maxGap, int utcOffset) {
+        return this.reconcileInterval == reconcileInterval && this.maxGap == maxGap
+                && zone.getRawOffset() == -utcOffset * 60000;
+    }
+
+    /**
+     * @return an integrator with the settings of this one and no totals yet
+     */
+    EfergyEngageEnergyIntegrator emptyCopy() {
+        return new EfergyEngageEnergyIntegrator(reconcileInterval, maxGap, -zone.getRawOffset() / 60000);
+    }
+
+    /**
+     * @return true if the type is a total this integrator can serve
+     */
+    static boolean isTotal(EfergyEngageBindingType type) {
+        return index(type) >= 0;
+    }
+
+    synchronized void add(long time, float watts) {
+        if (time <= lastTime) {
+            return;
+        }
+        long interval = time - lastTime;
+        if (lastTime == 0 || interval > maxGap) {
+            //energy during a gap is unknown, the first reading only starts the integration
+            if (lastTime > 0) {
+                Arrays.fill(reconciled, 0);
+            }
+            for (int i = 0; i < TOTALS.length; i++) {
+                if (time >= periodEnds[i]) {
+                    totals[i] = 0;
+                    reconciled[i] = 0;
+                    periodEnds[i] = periodEnd(i, time);
+                }
+            }
+        } else {
+            double energy = (lastWatts + watts) / 2.0 * interval / WATT_MS_PER_KWH;
+            for (int i = 0; i < TOTALS.length; i++) {
+                if (time < periodEnds[i]) {
+                    totals[i] += energy;
+                } else {
+                    //the new period gets the share of the interval after its start
+                    long start = periodEnds[i];
+                    totals[i] = start > lastTime ? energy * (time - start) / interval : energy;
+                    reconciled[i] = reconciled[i] > 0 ? time : 0;
+                    periodEnds[i] = periodEnd(i, time);
+                }
+            }
+        }
+        lastTime = time;
+        lastWatts = watts;
+    }
+
+    synchronized boolean isReconcileDue(EfergyEngageBindingType type, long now) {
+        int i = index(type);
+        return reconciled[i] == 0 || now - reconciled[i] >= reconcileInterval;
+    }
+
+    /**
+     * Replaces the integrated total by the sum read from the server.
+     */
+    synchronized void reconcile(EfergyEngageBindingType type, EfergyEngageMeasurement measurement, long now) {
+        int i = index(type);
+        if (!KWH.equalsIgnoreCase(measurement.getUnit()) || measurement.getValue() < 0) {
+            return;
+        }
+        totals[i] = measurement.getValue();
+        reconciled[i] = now;
+        periodEnds[i] = periodEnd(i, Math.max(now, lastTime));
+    }
+
+    /**
+     * @return the integrated total, null if it has not been reconciled yet
+     */
+    synchronized EfergyEngageMeasurement getMeasurement(EfergyEngageBindingType type) {
+        int i = index(type);
+        if (reconciled[i] == 0) {
+            return null;
+        }
+        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement((float) totals[i], KWH);
+        measurement.setMilis(lastTime);
+        return measurement;
+    }
+
+    private static int index(EfergyEngageBindingType type) {
+        for (int i = 0; i < TOTALS.length; i++) {
+            if (TOTALS[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long periodEnd(int index, long time) {
+        return periodEnd(TOTALS[index], time, zone);
+    }
+
+    /**
+     * @param type one of the totals
+     * @return start of the period following the one holding time
+     */
+    static long periodEnd(EfergyEngageBindingType type, long time, TimeZone zone) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setFirstDayOfWeek(Calendar.MONDAY);
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        switch (type) {
+            case DAY_TOTAL:
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                break;
+            case WEEK_TOTAL:
+                calendar.set(Calendar.DAY_OF_WEEK, Calendar.MONDAY);
+                calendar.add(Calendar.WEEK_OF_YEAR, 1);
+                break;
+            case MONTH_TOTAL:
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                calendar.add(Calendar.MONTH, 1);
+                break;
+            default:
+                calendar.set(Calendar.DAY_OF_YEAR, 1);
+                calendar.add(Calendar.YEAR, 1);
+                break;
+        }
+        return calendar.getTimeInMillis();
+    }
+}
@@ -9,13 +9,21 @@
 package org.openhab.binding.efergyengage.internal;
 
 import org.openhab.binding.efergyengage.EfergyEngageBindingProvider;
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
 import org.openhab.core.binding.BindingConfig;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.items.*;
 import org.openhab.model.item.binding.AbstractGenericBindingProvider;
 import org.openhab.model.item.binding.BindingConfigParseException;
 
-import static org.openhab.binding.efergyengage.internal.EfergyEngageConstants.*;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.openhab.binding.efergyengage.internal.EfergyEngageConstants.DEFAULT_ACCOUNT;
 
 
 /**
@@ -26,6 +34,12 @@ import static org.openhab.binding.efergyengage.internal.EfergyEngageConstants.*;
  */
 public class EfergyEngageGenericBindingProvider extends AbstractGenericBindingProvider implements EfergyEngageBindingProvider {
 
+    private static final String[] NO_ITEMS = new String[0];
+
+    //item names per account and binding type, null when it has to be rebuilt after a configuration change
+    private volatile Map<String, Map<EfergyEngageBindingType, String[]>> routes;
+    private int routesVersion;
+
     /**
      * {@inheritDoc}
      */
@@ -38,14 +52,33 @@ public class EfergyEngageGenericBindingProvider extends AbstractGenericBindingPr
      */
     @Override
     public void validateItemType(Item item, String bindingConfig) throws BindingConfigParseException {
+        EfergyEngageBindingType type = EfergyEngageBindingType.fromType(getType(bindingConfig.split(":")[0]));
+        if (type == EfergyEngageBindingType.ANOMALY) {
+            if (!(item instanceof NumberItem || item instanceof SwitchItem)) {
+                throw new BindingConfigParseException("item '" + item.getName()
+                        + "' is of type '" + item.getClass().getSimpleName()
+                        + "', only NumberItems/SwitchItems are allowed for " + type + " - please check your *.items configuration");
+            }
+            return;
+        }
         if ((!(item instanceof NumberItem || item instanceof StringItem || item instanceof DateTimeItem))
-           || (!INSTANT.equals(bindingConfig) && !DAY_TOTAL.equals(bindingConfig) && !WEEK_TOTAL.equals(bindingConfig)
-                && !MONTH_TOTAL.equals(bindingConfig) && !YEAR_TOTAL.equals(bindingConfig) && !LAST_MEASUREMENT.equals(bindingConfig)))
+           || type == null)
         {
             throw new BindingConfigParseException("item '" + item.getName()
                     + "' is of type '" + item.getClass().getSimpleName()
                     + "', only NumberItems/StringItems are allowed - please check your *.items configuration");
         }
+        if ((type.isHistory() || type.isCost() || type == EfergyEngageBindingType.BASELINE_DEVIATION
+                || type == EfergyEngageBindingType.METRIC) && !(item instanceof NumberItem)) {
+            throw new BindingConfigParseException("item '" + item.getName()
+                    + "' is of type '" + item.getClass().getSimpleName()
+                    + "', only NumberItems are allowed for " + type + " - please check your *.items configuration");
+        }
+        if (type.getPeriod() != null && item instanceof DateTimeItem) {
+            throw new BindingConfigParseException("item '" + item.getName()
+                    + "' is of type '" + item.getClass().getSimpleName()
+                    + "', only NumberItems/StringItems are allowed for " + type + " - please check your *.items configuration");
+        }
     }
 
     /**
@@ -55,20 +88,276 @@ public class EfergyEngageGenericBindingProvider extends AbstractGenericBindingPr
     public void processBindingConfiguration(String context, Item item, String bindingConfig) throws BindingConfigParseException {
         super.processBindingConfiguration(context, item, bindingConfig);
 
-        EfergyEngageBindingConfig config = new EfergyEngageBindingConfig(bindingConfig);
-
-        //parse bindingconfig here ...
+        //[account.]type, plus [:percentile]:window for history items, e.g. building1.instantpercentile:95:24h,
+        //metric:<name>[...] for metric items, e.g. metric:latency:instant:99,
+        //or instant:<sid>[:<phase>] for the reading of a single sensor, e.g. instant:712345:2
+        String[] parts = bindingConfig.split(":");
+        EfergyEngageBindingType type = EfergyEngageBindingType.fromType(getType(parts[0]));
+        if (type == EfergyEngageBindingType.INSTANT && parts.length > 1) {
+            type = EfergyEngageBindingType.SENSOR;
+        }
+        EfergyEngageBindingConfig config = new EfergyEngageBindingConfig(getAccount(parts[0]), type);
+        parts[0] = getType(parts[0]);
+        //NumberItems get totals as kWh numbers and anomalies as 1/0, StringItems totals as text with the unit
+        config.numeric = item instanceof NumberItem;
+        if (config.getType().isHistory()) {
+            int expected = config.getType() == EfergyEngageBindingType.INSTANT_PERCENTILE ? 3 : 2;
+            if (parts.length != expected) {
+                throw new BindingConfigParseException("item '" + item.getName() + "' binding '" + bindingConfig
+                        + "' must look like " + parts[0] + (expected == 3 ? ":<percentile>" : "") + ":<window>, e.g. "
+                        + parts[0] + (expected == 3 ? ":95" : "") + ":1h");
+            }
+            config.window = parseWindow(item, parts[expected - 1]);
+            if (expected == 3) {
+                config.percentile = parsePercentile(item, parts[1]);
+            }
+        } else if (config.getType() == EfergyEngageBindingType.METRIC) {
+            parseMetric(item, bindingConfig, parts, config);
+        } else if (config.getType() == EfergyEngageBindingType.SENSOR) {
+            parseSensor(item, bindingConfig, parts, config);
+        }
 
         addBindingConfig(item, config);
+    }
+
+    /**
+     * The config is stored and the routes invalidated under the lock, the listeners are notified after
+     * releasing it, so that they read the routes of the new config and post their events unlocked.
+     */
+    @Override
+    protected void addBindingConfig(Item item, BindingConfig config) {
+        synchronized (this) {
+            bindingConfigs.put(item.getName(), config);
+            invalidateRoutes();
+        }
+        super.addBindingConfig(item, config);
+    }
+
+    /**
+     * Like {@link #addBindingConfig}, the listeners are notified of the removed items after releasing the lock.
+     */
+    @Override
+    public void removeConfigurations(String context) {
+        synchronized (this) {
+            Set<Item> items = contextMap.get(context);
+            if (items != null) {
+                for (Item item : items) {
+                    bindingConfigs.remove(item.getName());
+                }
+            }
+            invalidateRoutes();
+        }
+        super.removeConfigurations(context);
+    }
+
+    public String[] getItemNames(String account, EfergyEngageBindingType type) {
+        Map<String, Map<EfergyEngageBindingType, String[]>> current = routes;
+        if (current == null) {
+            current = buildRoutes();
+        }
+        Map<EfergyEngageBindingType, String[]> accountRoutes = current.get(account);
+        String[] itemNames = accountRoutes != null ? accountRoutes.get(type) : null;
+        return itemNames != null ? itemNames : NO_ITEMS;
+    }
+
+    private static String getAccount(String accountAndType) {
+        int dot = accountAndType.indexOf('.');
+        return dot > 0 ? accountAndType.substring(0, dot) : DEFAULT_ACCOUNT;
+    }
+
+    private static String getType(String accountAndType) {
+        return accountAndType.substring(accountAndType.indexOf('.') + 1);
+    }
 
+    /**
+     * Called holding the lock of the provider together with the change of the binding configs.
+     */
+    private void invalidateRoutes() {
+        routes = null;
+        routesVersion++;
     }
 
+    private Map<String, Map<EfergyEngageBindingType, String[]>> buildRoutes() {
+        //the binding configs only change under the lock, so the copy is consistent with the version
+        int version;
+        Map<String, BindingConfig> configs;
+        synchronized (this) {
+            version = routesVersion;
+            configs = new HashMap<>(bindingConfigs);
+        }
+
+        Map<String, Map<EfergyEngageBindingType, List<String>>> lists = new HashMap<>();
+        for (Map.Entry<String, BindingConfig> entry : configs.entrySet()) {
+            EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) entry.getValue();
+            Map<EfergyEngageBindingType, List<String>> accountLists = lists.get(config.getAccount());
+            if (accountLists == null) {
+                accountLists = new EnumMap<>(EfergyEngageBindingType.class);
+                lists.put(config.getAccount(), accountLists);
+            }
+            List<String> itemNames = accountLists.get(config.getType());
+            if (itemNames == null) {
+                itemNames = new ArrayList<>();
+                accountLists.put(config.getType(), itemNames);
+            }
+            itemNames.add(entry.getKey());
+        }
+        Map<String, Map<EfergyEngageBindingType, String[]>> built = new HashMap<>();
+        for (Map.Entry<String, Map<EfergyEngageBindingType, List<String>>> accountLists : lists.entrySet()) {
+            Map<EfergyEngageBindingType, String[]> accountRoutes = new EnumMap<>(EfergyEngageBindingType.class);
+            for (Map.Entry<EfergyEngageBindingType, List<String>> entry : accountLists.getValue().entrySet()) {
+                accountRoutes.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+            }
+            built.put(accountLists.getKey(), accountRoutes);
+        }
 
-    public String getItemType(String itemName) {
+        synchronized (this) {
+            //a configuration change during the build leaves the routes to be rebuilt on the next read
+            if (version == routesVersion) {
+                routes = built;
+            }
+        }
+        return built;
+    }
+
+
+    private long parseWindow(Item item, String window) throws BindingConfigParseException {
+        try {
+            long length = Long.parseLong(window.substring(0, window.length() - 1));
+            switch (window.charAt(window.length() - 1)) {
+                case 's':
+                    return length * 1000;
+                case 'm':
+                    return length * 60000;
+                case 'h':
+                    return length * 3600000;
+                case 'd':
+                    return length * 86400000;
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            //reported below
+        }
+        throw new BindingConfigParseException("item '" + item.getName() + "' has invalid window '" + window
+                + "', use a number followed by s, m, h or d");
+    }
+
+    private int parsePercentile(Item item, String percentile) throws BindingConfigParseException {
+        try {
+            int value = Integer.parseInt(percentile);
+            if (value >= 0 && value <= 100) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+        throw new BindingConfigParseException("item '" + item.getName() + "' has invalid percentile '" + percentile
+                + "', use a number from 0 to 100");
+    }
+
+    /**
+     * Parses metric:&lt;name&gt;, metric:readinglag[:&lt;percentile&gt;] and metric:latency:&lt;type&gt;:&lt;percentile&gt;
+     */
+    private void parseMetric(Item item, String bindingConfig, String[] parts, EfergyEngageBindingConfig config)
+            throws BindingConfigParseException {
+        if (parts.length < 2 || !EfergyEngageMetrics.NAMES.contains(parts[1])) {
+            throw new BindingConfigParseException("item '" + item.getName() + "' binding '" + bindingConfig
+                    + "' must name one of the metrics " + EfergyEngageMetrics.NAMES);
+        }
+        config.metric = parts[1];
+        switch (config.metric) {
+            case EfergyEngageMetrics.LATENCY:
+                EfergyEngageBindingType endpoint = parts.length == 4 ? EfergyEngageBindingType.fromType(parts[2]) : null;
+                if (endpoint == null || endpoint.getEndpoint() == null) {
+                    throw new BindingConfigParseException("item '" + item.getName() + "' binding '" + bindingConfig
+                            + "' must look like metric:latency:<type>:<percentile>, e.g. metric:latency:instant:99");
+                }
+                config.endpoint = endpoint.getEndpoint();
+                config.percentile = parsePercentile(item, parts[3]);
+                break;
+            case EfergyEngageMetrics.READING_LAG:
+                if (parts.length > 3) {
+                    throw new BindingConfigParseException("item '" + item.getName() + "' binding '" + bindingConfig
+                            + "' must look like metric:readinglag[:<percentile>], e.g. metric:readinglag:99");
+                }
+                if (parts.length == 3) {
+                    config.percentile = parsePercentile(item, parts[2]);
+                }
+                break;
+            default:
+                if (parts.length != 2) {
+                    throw new BindingConfigParseException("item '" + item.getName() + "' binding '" + bindingConfig
+                            + "' must look like metric:" + config.metric);
+                }
+        }
+    }
+
+    /**
+     * Parses instant:&lt;sid&gt;[:&lt;phase&gt;]
+     */
+    private void parseSensor(Item item, String bindingConfig, String[] parts, EfergyEngageBindingConfig config)
+            throws BindingConfigParseException {
+        if (!"instant".equals(parts[0]) || parts.length > 3 || parts.length < 2 || parts[1].isEmpty()) {
+            throw new BindingConfigParseException("item '" + item.getName() + "' binding '" + bindingConfig
+                    + "' must look like instant:<sid>[:<phase>], e.g. instant:712345:2");
+        }
+        config.sensor = parts[1];
+        if (parts.length == 3) {
+            try {
+                config.phase = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                config.phase = 0;
+            }
+            if (config.phase < 1) {
+                throw new BindingConfigParseException("item '" + item.getName() + "' has invalid phase '" + parts[2]
+                        + "', use a number from 1");
+            }
+        }
+    }
+
+    public EfergyEngageBindingType getItemType(String itemName) {
         final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
         return config != null ? (config.getType()) : null;
     }
 
+    public String getItemAccount(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null ? config.getAccount() : null;
+    }
+
+    public long getItemWindow(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null ? config.window : 0;
+    }
+
+    public int getItemPercentile(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null ? config.percentile : 0;
+    }
+
+    public boolean isItemNumeric(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null && config.numeric;
+    }
+
+    public String getItemMetric(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null ? config.metric : null;
+    }
+
+    public EfergyEngageBindingType getItemEndpoint(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null ? config.endpoint : null;
+    }
+
+    public String getItemSensor(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null ? config.sensor : null;
+    }
+
+    public int getItemPhase(String itemName) {
+        final EfergyEngageBindingConfig config = (EfergyEngageBindingConfig) this.bindingConfigs.get(itemName);
+        return config != null ? config.phase : 0;
+    }
+
     /**
      * This is a helper class holding binding specific configuration details
      *
@@ -78,13 +367,26 @@ public class EfergyEngageGenericBindingProvider extends AbstractGenericBindingPr
     class EfergyEngageBindingConfig implements BindingConfig {
 
         // put member fields here which holds the parsed values
-        private String type;
+        private String account;
+        private EfergyEngageBindingType type;
+        private long window;
+        private int percentile;
+        private boolean numeric;
+        private String metric;
+        private EfergyEngageBindingType endpoint;
+        private String sensor;
+        private int phase;
 
-        EfergyEngageBindingConfig(String type) {
+        EfergyEngageBindingConfig(String account, EfergyEngageBindingType type) {
+            this.account = account;
             this.type = type;
         }
 
-        public String getType() {
+        public String getAccount() {
+            return account;
+        }
+
+        public EfergyEngageBindingType getType() {
             return type;
         }
     }
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with HDR-style log-linear buckets: every power of two is
+ * split into 16 buckets, so percentiles are exact below 32 and within 1/16 of the value above.
+ * Recording is a few atomic increments, no allocation. A histogram counts from its creation, see
+ * {@link EfergyEngageIntervalHistogram} for one of the recent values only.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //values below LINEAR get a bucket of their own
+    private static final int LINEAR = SUB_BUCKETS * 2;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            //retry with the new maximum
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long n = count.get();
+        return n > 0 ? (double) sum.get() / n : 0;
+    }
+
+    /**
+     * @param percentile 0 - 100
+     * @return the upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    long getPercentile(double percentile) {
+        return getPercentile(percentile, null);
+    }
+
+    /**
+     * @param other histogram whose values are counted along with the values of this one, null for none
+     * @return the percentile of the values of both histograms, as if they had been recorded into one
+     */
+    long getPercentile(double percentile, EfergyEngageHistogram other) {
+        long n = count.get() + (other != null ? other.count.get() : 0);
+        long max = Math.max(this.max.get(), other != null ? other.max.get() : 0);
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i) + (other != null ? other.counts.get(i) : 0);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + mantissa;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int group = (bucket - LINEAR) / SUB_BUCKETS;
+        long mantissa = SUB_BUCKETS + (bucket - LINEAR) % SUB_BUCKETS;
+        int shift = group + 1;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
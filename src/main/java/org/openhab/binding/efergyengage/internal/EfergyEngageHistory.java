@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.util.Arrays;
+
+/**
+ * Fixed capacity ring buffer of instant readings stored as primitive (timestamp, watts) pairs.
+ * Rolling windows over the buffer keep their sum and min/max candidates up to date on every
+ * sample, so mean, min and max cost amortized O(1). Percentiles are selected from a preallocated
+ * scratch array. Nothing is allocated per sample.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageHistory {
+
+    private final int capacity;
+    private final long[] times;
+    private final float[] watts;
+    private final float[] scratch;
+
+    //sequence number of the next sample, samples head - capacity .. head - 1 are in the buffer
+    private long head;
+
+    //one window per length read, items use only a few lengths so they are searched linearly
+    private Window[] windows = new Window[4];
+    private int windowCount;
+
+    EfergyEngageHistory(int capacity) {
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.watts = new float[capacity];
+        this.scratch = new float[capacity];
+    }
+
+    /**
+     * Appends a reading, readings not newer than the last one are ignored.
+     */
+    synchronized void add(long time, float value) {
+        if (head > 0 && time <= times[index(head - 1)]) {
+            return;
+        }
+        if (head >= capacity) {
+            for (int w = 0; w < windowCount; w++) {
+                windows[w].drop(head - capacity);
+            }
+        }
+        int i = index(head);
+        times[i] = time;
+        watts[i] = value;
+        long seq = head++;
+        for (int w = 0; w < windowCount; w++) {
+            windows[w].add(seq, time);
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    synchronized int size() {
+        return (int) Math.min(head, capacity);
+    }
+
+    /**
+     * @return mean power of the readings in the window ending at now, NaN if there are none
+     */
+    synchronized float getAverage(long length, long now) {
+        Window window = getWindow(length, now);
+        return window.count() > 0 ? (float) (window.sum / window.count()) : Float.NaN;
+    }
+
+    synchronized float getMin(long length, long now) {
+        Window window = getWindow(length, now);
+        return window.count() > 0 ? watts[index(window.min.first())] : Float.NaN;
+    }
+
+    synchronized float getMax(long length, long now) {
+        Window window = getWindow(length, now);
+        return window.count() > 0 ? watts[index(window.max.first())] : Float.NaN;
+    }
+
+    /**
+     * @param percentile 0 - 100
+     */
+    synchronized float getPercentile(int percentile, long length, long now) {
+        Window window = getWindow(length, now);
+        int n = window.count();
+        if (n == 0) {
+            return Float.NaN;
+        }
+        for (int i = 0; i < n; i++) {
+            scratch[i] = watts[index(window.tail + i)];
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * n) - 1;
+        return select(scratch, n, Math.max(0, Math.min(n - 1, rank)));
+    }
+
+    synchronized void clear() {
+        head = 0;
+        Arrays.fill(windows, 0, windowCount, null);
+        windowCount = 0;
+    }
+
+    private Window getWindow(long length, long now) {
+        Window window = findWindow(length);
+        if (window == null) {
+            window = new Window(length);
+            for (long seq = Math.max(0, head - capacity); seq < head; seq++) {
+                window.add(seq, times[index(seq)]);
+            }
+            if (windowCount == windows.length) {
+                windows = Arrays.copyOf(windows, windowCount * 2);
+            }
+            windows[windowCount++] = window;
+        }
+        window.evict(now);
+        return window;
+    }
+
+    private Window findWindow(long length) {
+        for (int w = 0; w < windowCount; w++) {
+            if (windows[w].length == length) {
+                return windows[w];
+            }
+        }
+        return null;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    /**
+     * Quickselect of the k-th smallest of the first n values, reorders the values.
+     */
+    private static float select(float[] values, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+        while (left < right) {
+            float pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    float tmp = values[i];
+                    values[i++] = values[j];
+                    values[j--] = tmp;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    /**
+     * Readings of the last length ms with their running sum and monotonic min/max candidates.
+     */
+    private class Window {
+        private final long length;
+        private final Deque min = new Deque();
+        private final Deque max = new Deque();
+        private long tail;
+        private double sum;
+
+        Window(long length) {
+            this.length = length;
+            this.tail = Math.max(0, head - capacity);
+        }
+
+        int count() {
+            return (int) (head - tail);
+        }
+
+        void add(long seq, long time) {
+            float value = watts[index(seq)];
+            sum += value;
+            while (!min.isEmpty() && watts[index(min.last())] >= value) {
+                min.removeLast();
+            }
+            min.addLast(seq);
+            while (!max.isEmpty() && watts[index(max.last())] <= value) {
+                max.removeLast();
+            }
+            max.addLast(seq);
+            evict(time);
+        }
+
+        /**
+         * Removes the sample about to be overwritten in the buffer.
+         */
+        void drop(long seq) {
+            if (tail == seq) {
+                sum -= watts[index(seq)];
+                tail++;
+                min.removeBefore(tail);
+                max.removeBefore(tail);
+            }
+        }
+
+        void evict(long now) {
+            while (tail < head && times[index(tail)] <= now - length) {
+                sum -= watts[index(tail)];
+                tail++;
+            }
+            if (tail == head) {
+                sum = 0;
+            }
+            min.removeBefore(tail);
+            max.removeBefore(tail);
+        }
+    }
+
+    /**
+     * Double ended queue of sample sequence numbers backed by a ring of the history capacity.
+     */
+    private class Deque {
+        private final long[] items = new long[capacity];
+        private int first;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long first() {
+            return items[first];
+        }
+
+        long last() {
+            return items[(first + size - 1) % capacity];
+        }
+
+        void addLast(long seq) {
+            if (size == capacity) {
+                first = (first + 1) % capacity;
+                size--;
+            }
+            items[(first + size) % capacity] = seq;
+            size++;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void removeBefore(long seq) {
+            while (size > 0 && items[first] < seq) {
+                first = (first + 1) % capacity;
+                size--;
+            }
+        }
+    }
+}
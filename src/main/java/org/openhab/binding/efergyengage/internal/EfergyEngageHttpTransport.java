@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP transport with keep-alive connection reuse, gzip support and explicit timeouts.
+ * Connections are pooled by the JVM keep-alive cache, so every response is read
+ * to the end and closed to hand the socket back for the next request. Running requests can be
+ * aborted from another thread by disconnecting their connection.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageHttpTransport implements EfergyEngageTransport {
+
+    private static final int BUFFER_SIZE = 4096;
+    //query parameters holding credentials, masked in the messages of the exceptions thrown
+    private static final Pattern SECRETS = Pattern.compile("([?&](?:token|password)=)[^&]*");
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    //connections of the requests running, by the thread running them
+    private final ConcurrentMap<Thread, HttpURLConnection> connections = new ConcurrentHashMap<>();
+
+    public EfergyEngageHttpTransport(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @return the url with the values of its token and password parameters replaced by ***
+     */
+    static String mask(String url) {
+        return SECRETS.matcher(url).replaceAll("$1***");
+    }
+
+    boolean hasTimeouts(int connectTimeout, int readTimeout) {
+        return this.connectTimeout == connectTimeout && this.readTimeout == readTimeout;
+    }
+
+    @Override
+    public <T> T get(String url, ResponseHandler<T> handler) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setRequestProperty("Connection", "keep-alive");
+
+        Thread thread = Thread.currentThread();
+        connections.put(thread, connection);
+        try {
+            //an abort before the connection was registered shows as the interrupt of the thread
+            if (thread.isInterrupted()) {
+                throw new InterruptedIOException("Request aborted for URL: " + mask(url));
+            }
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                drain(connection.getErrorStream());
+                if (code == HttpURLConnection.HTTP_UNAUTHORIZED || code == HttpURLConnection.HTTP_FORBIDDEN) {
+                    throw new EfergyEngageAuthException("Server rejected the token with HTTP response code: " + code);
+                }
+                throw new IOException("Server returned HTTP response code: " + code + " for URL: " + mask(url));
+            }
+
+            InputStream response = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+            try {
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    response = new GZIPInputStream(response, BUFFER_SIZE);
+                }
+                T result = handler.handle(response);
+                drain(response);
+                return result;
+            } finally {
+                response.close();
+            }
+        } finally {
+            connections.remove(thread, connection);
+        }
+    }
+
+    @Override
+    public void abort(Thread thread) {
+        HttpURLConnection connection = connections.get(thread);
+        if (connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void close() {
+        //idle connections are closed by the keep-alive cache, only running requests are aborted
+        for (HttpURLConnection connection : connections.values()) {
+            connection.disconnect();
+        }
+    }
+
+    private void drain(InputStream stream) throws IOException {
+        if (stream == null) {
+            return;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (stream.read(buffer) != -1) {
+                //skip the rest so the connection can be reused
+            }
+        } finally {
+            stream.close();
+        }
+    }
+}
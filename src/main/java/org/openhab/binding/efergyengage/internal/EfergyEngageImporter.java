@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.openhab.binding.efergyengage.internal.EfergyEngageConstants.BACKFILL_CHUNK;
+
+/**
+ * Imports the power history of an account for a time range into a CSV file of "time,watts" lines,
+ * time in ms, to seed a persistence store which openHAB 1 bindings cannot write past values to.
+ * The range is read page by page from the history endpoint, each page streamed into the file and
+ * flushed as one batch, so memory stays bounded by the write buffer whatever the range.
+ * <p>
+ * After every page the range, the time imported up to and the file length are written to a checkpoint
+ * next to the file. An interrupted import of the same range resumes from it, cutting off a page written
+ * only partly, an import of another range starts the file over. Pages are requested at most every
+ * interval ms so the polling of the account is not starved.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageImporter implements Runnable {
+
+    /**
+     * Reads a page of the history, streaming its samples to the visitor.
+     */
+    interface PageReader {
+        void read(long from, long to, EfergyEngageSampleLog.Visitor visitor) throws IOException;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(EfergyEngageImporter.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long RETRY_DELAY = 60000;
+    private static final int MAX_RETRIES = 10;
+
+    private final String name;
+    private final File file;
+    private final File checkpoint;
+    private final long from;
+    //0 ends the range at the start of the day the import began
+    private final long to;
+    private final long interval;
+    private final PageReader reader;
+    private volatile boolean stopped;
+    private volatile Thread thread;
+
+    EfergyEngageImporter(String name, File file, long from, long to, long interval, PageReader reader) {
+        this.name = name;
+        this.file = file;
+        this.checkpoint = new File(file.getPath() + ".checkpoint");
+        this.from = from;
+        this.to = to;
+        this.interval = interval;
+        this.reader = reader;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getFrom() {
+        return from;
+    }
+
+    long getTo() {
+        return to;
+    }
+
+    /**
+     * Stops the import at its last checkpoint, a page being read is finished first.
+     */
+    void stop() {
+        stopped = true;
+        Thread thread = this.thread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            long[] state = readCheckpoint();
+            long to;
+            long position;
+            long length;
+            if (state != null && state[0] == from && (this.to == 0 || state[1] == this.to)) {
+                to = state[1];
+                position = Math.max(from, state[2]);
+                length = state[3];
+            } else {
+                if (state != null) {
+                    logger.info("Efergy Engage import range of account {} changed, {} is imported again", name, file);
+                }
+                to = this.to != 0 ? this.to : startOfToday();
+                position = from;
+                length = 0;
+                writeCheckpoint(to, position, length);
+            }
+            truncate(length);
+            if (position >= to) {
+                logger.debug("Efergy Engage import of account {} into {} is complete", name, file);
+                return;
+            }
+            logger.info("Efergy Engage import of account {} into {} starts at {}", name, file, position);
+
+            int retries = 0;
+            int imported = 0;
+            long lastRequest = 0;
+            while (position < to && !stopped) {
+                long wait = lastRequest + interval - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                lastRequest = System.currentTimeMillis();
+                long end = Math.min(to, position + BACKFILL_CHUNK);
+                try {
+                    int count = importPage(position, end);
+                    length = file.length();
+                    writeCheckpoint(to, end, length);
+                    imported += count;
+                    position = end;
+                    retries = 0;
+                } catch (IOException | RuntimeException e) {
+                    truncate(length);
+                    if (++retries > MAX_RETRIES) {
+                        logger.error("Efergy Engage import of account {} stopped at {} after repeated failures: {}",
+                                name, position, e.toString());
+                        return;
+                    }
+                    logger.warn("Cannot import Efergy Engage page {} - {} of account {}, retrying: {}",
+                            position, end, name, e.toString());
+                    Thread.sleep(RETRY_DELAY);
+                }
+            }
+            if (!stopped) {
+                logger.info("Efergy Engage import of account {} into {} finished with {} samples", name, file, imported);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Efergy Engage import of account {} into {} failed: {}", name, file, e.toString());
+        } finally {
+            thread = null;
+        }
+    }
+
+    /**
+     * Streams a page into the file, flushed and synced as one batch.
+     *
+     * @return number of samples imported
+     */
+    private int importPage(long from, long to) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file, true);
+             final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, UTF_8), 65536)) {
+            final IOException[] failure = new IOException[1];
+            final int[] count = new int[1];
+            reader.read(from, to, new EfergyEngageSampleLog.Visitor() {
+                @Override
+                public void sample(long time, float watts) {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    try {
+                        writer.write(Long.toString(time));
+                        writer.write(',');
+                        writer.write(Float.toString(watts));
+                        writer.write('\n');
+                        count[0]++;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            writer.flush();
+            stream.getFD().sync();
+            return count[0];
+        }
+    }
+
+    /**
+     * @return from and to of the range, time imported up to and the file length at that time, null without a
+     * checkpoint or with one of the first version, which did not hold the range
+     */
+    private long[] readCheckpoint() throws IOException {
+        if (!checkpoint.exists()) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(checkpoint.toPath(), UTF_8);
+        try {
+            String[] parts = lines.get(0).split(",");
+            if (parts.length < 4) {
+                return null;
+            }
+            long[] state = new long[4];
+            for (int i = 0; i < state.length; i++) {
+                state[i] = Long.parseLong(parts[i].trim());
+            }
+            return state;
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt checkpoint " + checkpoint, e);
+        }
+    }
+
+    private void writeCheckpoint(long to, long time, long length) throws IOException {
+        File temp = new File(checkpoint.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            stream.write((from + "," + to + "," + time + "," + length + "\n").getBytes(UTF_8));
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long startOfToday() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Cuts off whatever was written after the last checkpoint.
+     */
+    private void truncate(long length) throws IOException {
+        if (file.exists() && file.length() > length) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(length);
+            }
+        }
+    }
+}
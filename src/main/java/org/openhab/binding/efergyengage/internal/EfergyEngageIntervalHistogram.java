@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+/**
+ * Histogram of the recent values: they are recorded into the histogram of the current interval,
+ * which replaces the previous one once the interval is over. Percentiles are read over the previous
+ * and the current interval together, so they reflect the last one to two intervals rather than
+ * everything since the start, and a read never finds an interval just begun empty.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageIntervalHistogram {
+
+    private final long interval;
+    private volatile EfergyEngageHistogram current = new EfergyEngageHistogram();
+    private volatile EfergyEngageHistogram previous = new EfergyEngageHistogram();
+    //end of the current interval
+    private volatile long end;
+
+    /**
+     * @param interval length of an interval in ms
+     */
+    EfergyEngageIntervalHistogram(long interval, long now) {
+        this.interval = interval;
+        this.end = now + interval;
+    }
+
+    void record(long value, long now) {
+        rotate(now);
+        current.record(value);
+    }
+
+    /**
+     * @param percentile 0 - 100
+     * @return the upper bound of the bucket holding the percentile of the recent values, 0 if there are none
+     */
+    long getPercentile(double percentile, long now) {
+        rotate(now);
+        return current.getPercentile(percentile, previous);
+    }
+
+    /**
+     * @return the largest recent value, 0 if there are none
+     */
+    long getMax(long now) {
+        rotate(now);
+        return Math.max(current.getMax(), previous.getMax());
+    }
+
+    private void rotate(long now) {
+        if (now < end) {
+            return;
+        }
+        synchronized (this) {
+            if (now >= end) {
+                //an interval without any value in between leaves nothing recent
+                previous = now < end + interval ? current : new EfergyEngageHistogram();
+                current = new EfergyEngageHistogram();
+                end = now + interval;
+            }
+        }
+    }
+}
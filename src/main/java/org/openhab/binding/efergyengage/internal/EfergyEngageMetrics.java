@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.openhab.binding.efergyengage.internal.EfergyEngageConstants.METRICS_INTERVAL;
+
+/**
+ * Request and freshness metrics of an account: latency histograms per endpoint, counters of
+ * successful, failed and timed out requests, logins and skipped cycles, and the lag of the last
+ * instant reading behind the wall clock. Read by metric items and via JMX.
+ * <p>
+ * The counters count since the account was created. The histograms of latency and reading lag only
+ * hold the last one to two {@link EfergyEngageConstants#METRICS_INTERVAL}s, so that their percentiles
+ * show how the server is doing now rather than since the start.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageMetrics implements EfergyEngageMetricsMBean {
+
+    //metric names as used by the metric items, e.g. metric:readinglag or metric:latency:instant:99
+    static final String SUCCESSES = "successes";
+    static final String FAILURES = "failures";
+    static final String TIMEOUTS = "timeouts";
+    static final String LOGINS = "logins";
+    static final String RELOGINS = "relogins";
+    static final String SKIPPED_CYCLES = "skippedcycles";
+    static final String READING_LAG = "readinglag";
+    static final String LATENCY = "latency";
+    static final Set<String> NAMES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            SUCCESSES, FAILURES, TIMEOUTS, LOGINS, RELOGINS, SKIPPED_CYCLES, READING_LAG, LATENCY)));
+
+    //latency is recorded in microseconds
+    private final Map<EfergyEngageBindingType, EfergyEngageIntervalHistogram> latencies =
+            new EnumMap<>(EfergyEngageBindingType.class);
+    private final EfergyEngageIntervalHistogram readingLags;
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong relogins = new AtomicLong();
+    private final AtomicLong skippedCycles = new AtomicLong();
+    private volatile long readingLag;
+
+    EfergyEngageMetrics() {
+        long now = System.currentTimeMillis();
+        readingLags = new EfergyEngageIntervalHistogram(METRICS_INTERVAL, now);
+        for (EfergyEngageBindingType type : EfergyEngageBindingType.values()) {
+            if (type.getEndpoint() == type) {
+                latencies.put(type, new EfergyEngageIntervalHistogram(METRICS_INTERVAL, now));
+            }
+        }
+    }
+
+    void onSuccess(EfergyEngageBindingType endpoint, long nanos) {
+        successes.incrementAndGet();
+        latencies.get(endpoint).record(nanos / 1000, System.currentTimeMillis());
+    }
+
+    void onFailure(EfergyEngageBindingType endpoint, long nanos) {
+        failures.incrementAndGet();
+        latencies.get(endpoint).record(nanos / 1000, System.currentTimeMillis());
+    }
+
+    void onTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    void onLogin() {
+        logins.incrementAndGet();
+    }
+
+    void onRelogin() {
+        relogins.incrementAndGet();
+    }
+
+    void onSkippedCycle() {
+        skippedCycles.incrementAndGet();
+    }
+
+    /**
+     * @param readingTime last_reading_time of an instant reading
+     */
+    void onReading(long readingTime, long now) {
+        if (readingTime > 0) {
+            readingLag = Math.max(0, now - readingTime);
+            readingLags.record(readingLag, now);
+        }
+    }
+
+    /**
+     * @param endpoint endpoint of latency metrics, ignored otherwise
+     * @param percentile percentile of latency and reading lag metrics, 0 for the last reading lag
+     * @return the value of the named metric, latencies in ms
+     */
+    double getValue(String metric, EfergyEngageBindingType endpoint, int percentile) {
+        switch (metric) {
+            case SUCCESSES:
+                return successes.get();
+            case FAILURES:
+                return failures.get();
+            case TIMEOUTS:
+                return timeouts.get();
+            case LOGINS:
+                return logins.get();
+            case RELOGINS:
+                return relogins.get();
+            case SKIPPED_CYCLES:
+                return skippedCycles.get();
+            case READING_LAG:
+                return percentile > 0 ? readingLags.getPercentile(percentile, System.currentTimeMillis()) : readingLag;
+            case LATENCY:
+                return latencyPercentile(endpoint, percentile);
+            default:
+                throw new IllegalArgumentException("Unknown Efergy Engage metric " + metric);
+        }
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return successes.get();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getLoginCount() {
+        return logins.get();
+    }
+
+    @Override
+    public long getReloginCount() {
+        return relogins.get();
+    }
+
+    @Override
+    public long getSkippedCycleCount() {
+        return skippedCycles.get();
+    }
+
+    @Override
+    public long getReadingLag() {
+        return readingLag;
+    }
+
+    @Override
+    public long getReadingLagP50() {
+        return readingLags.getPercentile(50, System.currentTimeMillis());
+    }
+
+    @Override
+    public long getReadingLagP99() {
+        return readingLags.getPercentile(99, System.currentTimeMillis());
+    }
+
+    @Override
+    public double getInstantLatencyP50() {
+        return latencyPercentile(EfergyEngageBindingType.INSTANT, 50);
+    }
+
+    @Override
+    public double getInstantLatencyP99() {
+        return latencyPercentile(EfergyEngageBindingType.INSTANT, 99);
+    }
+
+    @Override
+    public double getInstantLatencyMax() {
+        return latencies.get(EfergyEngageBindingType.INSTANT).getMax(System.currentTimeMillis()) / 1000.0;
+    }
+
+    @Override
+    public double latencyPercentile(String endpoint, double percentile) {
+        EfergyEngageBindingType type = EfergyEngageBindingType.fromType(endpoint);
+        if (type == null || type.getEndpoint() == null) {
+            throw new IllegalArgumentException("Unknown Efergy Engage endpoint " + endpoint);
+        }
+        return latencyPercentile(type.getEndpoint(), percentile);
+    }
+
+    private double latencyPercentile(EfergyEngageBindingType endpoint, double percentile) {
+        return latencies.get(endpoint).getPercentile(percentile, System.currentTimeMillis()) / 1000.0;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+/**
+ * JMX view of the {@link EfergyEngageMetrics} of an account, registered as
+ * org.openhab.binding.efergyengage:type=Metrics,account=&lt;name&gt;
+ * Latencies are in ms, the reading lag is the age of the last instant reading in ms.
+ * <p>
+ * The counts are lifetime totals since the account was created. Percentiles and the maximum cover
+ * only the last 5 to 10 minutes.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public interface EfergyEngageMetricsMBean {
+
+    long getSuccessCount();
+
+    long getFailureCount();
+
+    long getTimeoutCount();
+
+    long getLoginCount();
+
+    long getReloginCount();
+
+    long getSkippedCycleCount();
+
+    long getReadingLag();
+
+    long getReadingLagP50();
+
+    long getReadingLagP99();
+
+    double getInstantLatencyP50();
+
+    double getInstantLatencyP99();
+
+    double getInstantLatencyMax();
+
+    /**
+     * @param endpoint binding type of the endpoint, e.g. instant or daytotal
+     * @param percentile 0 - 100
+     * @return request latency of the endpoint in ms
+     */
+    double latencyPercentile(String endpoint, double percentile);
+}
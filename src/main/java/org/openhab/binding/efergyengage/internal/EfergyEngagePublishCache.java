@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Last value published to every item, kept as primitives so that unchanged values can be
+ * recognized without building a State or asking the item registry.
+ * <p>
+ * Items are published from the refresh cycles, the background requests and the binding changes, so the
+ * comparison and the update of a value are done holding its lock.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngagePublishCache {
+
+    private final ConcurrentMap<String, Value> values = new ConcurrentHashMap<>();
+
+    /**
+     * Remembers the value of the item.
+     *
+     * @return true if the value or unit differ from the last published ones
+     */
+    boolean update(String itemName, float value, String unit) {
+        Value last = getValue(itemName);
+        synchronized (last) {
+            if (last.published && Float.floatToIntBits(last.value) == Float.floatToIntBits(value)
+                    && (unit == null ? last.unit == null : unit.equals(last.unit))) {
+                return false;
+            }
+            last.value = value;
+            last.unit = unit;
+            last.published = true;
+            return true;
+        }
+    }
+
+    /**
+     * Remembers the timestamp of the item.
+     *
+     * @return true if the timestamp differs from the last published one
+     */
+    boolean update(String itemName, long time) {
+        Value last = getValue(itemName);
+        synchronized (last) {
+            if (last.published && last.time == time) {
+                return false;
+            }
+            last.time = time;
+            last.published = true;
+            return true;
+        }
+    }
+
+    /**
+     * Remembers the metric value of the item.
+     *
+     * @return true if the value differs from the last published one
+     */
+    boolean update(String itemName, double metric) {
+        Value last = getValue(itemName);
+        synchronized (last) {
+            if (last.published && Double.doubleToLongBits(last.metric) == Double.doubleToLongBits(metric)) {
+                return false;
+            }
+            last.metric = metric;
+            last.published = true;
+            return true;
+        }
+    }
+
+    void remove(String itemName) {
+        values.remove(itemName);
+    }
+
+    void clear() {
+        values.clear();
+    }
+
+    private Value getValue(String itemName) {
+        Value value = values.get(itemName);
+        if (value == null) {
+            //two threads publishing a new item share the value that went in first
+            Value created = new Value();
+            value = values.putIfAbsent(itemName, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        return value;
+    }
+
+    private static class Value {
+        private boolean published;
+        private float value;
+        private long time;
+        private double metric;
+        private String unit;
+    }
+}
@@ -0,0 +1,461 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder of the Efergy Engage JSON responses. Only the fields used by the binding
+ * are read straight from the response stream, everything else is skipped without building
+ * an intermediate String or JSON tree.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+final class EfergyEngageResponseDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String STATUS_OK = "ok";
+    private static final String KWH = "kWh";
+    private static final long MIN_SAMPLE_TIME = 946684800000L;
+
+    /**
+     * Decodes the get_token response into the token, fails with the server description otherwise.
+     */
+    static final EfergyEngageTransport.ResponseHandler<String> TOKEN =
+            new EfergyEngageTransport.ResponseHandler<String>() {
+                @Override
+                public String handle(InputStream response) throws IOException {
+                    JsonReader reader = open(response);
+                    String status = null;
+                    String token = null;
+                    String desc = null;
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ("status".equals(name)) {
+                            status = nextString(reader);
+                        } else if ("token".equals(name)) {
+                            token = nextString(reader);
+                        } else if ("desc".equals(name)) {
+                            desc = nextString(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+
+                    if (!STATUS_OK.equals(status) || token == null) {
+                        throw new EfergyEngageException(desc != null ? desc : "Efergy login status: " + status);
+                    }
+                    return token;
+                }
+            };
+
+    /**
+     * Decodes the getInstant response into a measurement holding reading and last_reading_time,
+     * both of which are required.
+     */
+    static final EfergyEngageTransport.ResponseHandler<EfergyEngageMeasurement> INSTANT =
+            new EfergyEngageTransport.ResponseHandler<EfergyEngageMeasurement>() {
+                @Override
+                public EfergyEngageMeasurement handle(InputStream response) throws IOException {
+                    JsonReader reader = open(response);
+                    EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
+                    boolean reading = false;
+                    boolean time = false;
+                    String status = null;
+                    String error = null;
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ("reading".equals(name) && reader.peek() != JsonToken.NULL) {
+                            measurement.setValue((float) reader.nextDouble());
+                            reading = true;
+                        } else if ("last_reading_time".equals(name) && reader.peek() != JsonToken.NULL) {
+                            measurement.setMilis(reader.nextLong());
+                            time = true;
+                        } else if ("status".equals(name)) {
+                            status = nextString(reader);
+                        } else if ("error".equals(name) || "desc".equals(name) || "description".equals(name)) {
+                            error = nextError(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+
+                    checkStatus(status, error);
+                    checkField(reading, "reading");
+                    checkField(time, "last_reading_time");
+                    return measurement;
+                }
+            };
+
+    /**
+     * Decodes the getEnergy response into a measurement holding the sum in kWh, sum and units are required.
+     */
+    static final EfergyEngageTransport.ResponseHandler<EfergyEngageMeasurement> ENERGY =
+            new EfergyEngageTransport.ResponseHandler<EfergyEngageMeasurement>() {
+                @Override
+                public EfergyEngageMeasurement handle(InputStream response) throws IOException {
+                    JsonReader reader = open(response);
+                    EfergyEngageMeasurement measurement = new EfergyEngageMeasurement();
+                    boolean sum = false;
+                    boolean units = false;
+                    String status = null;
+                    String error = null;
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ("sum".equals(name) && reader.peek() != JsonToken.NULL) {
+                            measurement.setValue((float) reader.nextDouble());
+                            sum = true;
+                        } else if ("units".equals(name) && reader.peek() != JsonToken.NULL) {
+                            measurement.setUnit(reader.nextString());
+                            units = true;
+                        } else if ("status".equals(name)) {
+                            status = nextString(reader);
+                        } else if ("error".equals(name) || "desc".equals(name) || "description".equals(name)) {
+                            error = nextError(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+
+                    checkStatus(status, error);
+                    checkField(sum, "sum");
+                    checkField(units, "units");
+                    toKwh(measurement);
+                    return measurement;
+                }
+            };
+
+    /**
+     * Decodes the getCurrentValuesSummary response, an array of {"sid": ..., "cid": "PWER", "data":
+     * [{"&lt;timestamp&gt;": [watts, ...]}]} entries, into the table of all power sensors. Channels other
+     * than power are skipped, an error is answered by an object with a status instead of the array.
+     */
+    static final EfergyEngageTransport.ResponseHandler<EfergyEngageSensorTable> SUMMARY =
+            new EfergyEngageTransport.ResponseHandler<EfergyEngageSensorTable>() {
+                @Override
+                public EfergyEngageSensorTable handle(InputStream response) throws IOException {
+                    JsonReader reader = open(response);
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        String status = null;
+                        String error = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String name = reader.nextName();
+                            if ("status".equals(name)) {
+                                status = nextString(reader);
+                            } else if ("error".equals(name) || "desc".equals(name) || "description".equals(name)) {
+                                error = nextError(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        checkStatus(status, error);
+                        throw new EfergyEngageException("Efergy summary without sensors, status: " + status);
+                    }
+
+                    EfergyEngageSensorTable.Builder table = new EfergyEngageSensorTable.Builder();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readSensor(reader, table);
+                    }
+                    reader.endArray();
+                    return table.build();
+                }
+            };
+
+    /**
+     * Decodes the getHV response into power samples. Samples are the
+     * "&lt;timestamp&gt;": [watts] members found anywhere in the data, timestamps in s or ms.
+     */
+    static final EfergyEngageTransport.ResponseHandler<List<EfergyEngageMeasurement>> HISTORY =
+            new EfergyEngageTransport.ResponseHandler<List<EfergyEngageMeasurement>>() {
+                @Override
+                public List<EfergyEngageMeasurement> handle(InputStream response) throws IOException {
+                    final List<EfergyEngageMeasurement> samples = new ArrayList<>();
+                    history(new EfergyEngageSampleLog.Visitor() {
+                        @Override
+                        public void sample(long time, float watts) {
+                            EfergyEngageMeasurement sample = new EfergyEngageMeasurement();
+                            sample.setMilis(time);
+                            sample.setValue(watts);
+                            samples.add(sample);
+                        }
+                    }).handle(response);
+                    return samples;
+                }
+            };
+
+    /**
+     * Decodes the getHV response like {@link #HISTORY}, streaming each sample to the visitor as it is read
+     * instead of collecting the page. The status is only known at the end, so the visitor may have seen
+     * samples of a response which is rejected afterwards.
+     *
+     * @return handler returning the number of samples read
+     */
+    static EfergyEngageTransport.ResponseHandler<Integer> history(final EfergyEngageSampleLog.Visitor visitor) {
+        return new EfergyEngageTransport.ResponseHandler<Integer>() {
+            @Override
+            public Integer handle(InputStream response) throws IOException {
+                JsonReader reader = open(response);
+                int[] count = new int[1];
+                String status = null;
+                String error = null;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("status".equals(name)) {
+                        status = nextString(reader);
+                    } else if ("error".equals(name) || "desc".equals(name) || "description".equals(name)) {
+                        error = nextError(reader);
+                    } else {
+                        readSamples(reader, visitor, count);
+                    }
+                }
+                reader.endObject();
+
+                checkStatus(status, error);
+                return count[0];
+            }
+        };
+    }
+
+    private EfergyEngageResponseDecoder() {
+    }
+
+    private static void readSamples(JsonReader reader, EfergyEngageSampleLog.Visitor visitor, int[] count)
+            throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    long time = parseTime(reader.nextName());
+                    if (time > 0 && reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        readSample(reader, time, visitor, count);
+                    } else {
+                        readSamples(reader, visitor, count);
+                    }
+                }
+                reader.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readSamples(reader, visitor, count);
+                }
+                reader.endArray();
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    private static void readSensor(JsonReader reader, EfergyEngageSensorTable.Builder table) throws IOException {
+        String sid = null;
+        String cid = null;
+        long time = 0;
+        float[] channels = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("sid".equals(name) && reader.peek() != JsonToken.NULL) {
+                sid = reader.nextString();
+            } else if ("cid".equals(name) && reader.peek() != JsonToken.NULL) {
+                cid = reader.nextString();
+            } else if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                //the last entry holds the latest reading
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        long sampleTime = parseTime(reader.nextName());
+                        float[] sampleChannels = readChannels(reader);
+                        if (sampleTime > 0 && sampleChannels != null) {
+                            time = sampleTime;
+                            channels = sampleChannels;
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (sid != null && channels != null && (cid == null || cid.startsWith("PWER"))) {
+            table.add(sid, time, channels);
+        }
+    }
+
+    /**
+     * @return the channels of a reading given as a number or an array of numbers, null if there are none
+     */
+    private static float[] readChannels(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+            return new float[]{(float) reader.nextDouble()};
+        }
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        float[] channels = new float[4];
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+                if (count == channels.length) {
+                    channels = Arrays.copyOf(channels, count * 2);
+                }
+                channels[count++] = (float) reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return count > 0 ? Arrays.copyOf(channels, count) : null;
+    }
+
+    /**
+     * Reads the value of a sample given as a number or as an array starting with the number.
+     */
+    private static void readSample(JsonReader reader, long time, EfergyEngageSampleLog.Visitor visitor, int[] count)
+            throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            if (reader.hasNext()) {
+                readValue(reader, time, visitor, count);
+            }
+            while (reader.hasNext()) {
+                reader.skipValue();
+            }
+            reader.endArray();
+        } else {
+            readValue(reader, time, visitor, count);
+        }
+    }
+
+    private static void readValue(JsonReader reader, long time, EfergyEngageSampleLog.Visitor visitor, int[] count)
+            throws IOException {
+        if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+            visitor.sample(time, (float) reader.nextDouble());
+            count[0]++;
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    /**
+     * @return the member name as a timestamp in ms, 0 if it is not a timestamp
+     */
+    private static long parseTime(String name) {
+        if (name.isEmpty() || name.length() > 13) {
+            return 0;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return 0;
+            }
+        }
+        long time = Long.parseLong(name);
+        //seconds until year 5138, ms after, anything before 2000 is an id rather than a timestamp
+        time = time < 100000000000L ? time * 1000 : time;
+        return time >= MIN_SAMPLE_TIME ? time : 0;
+    }
+
+    private static JsonReader open(InputStream response) {
+        return new JsonReader(new InputStreamReader(response, UTF_8));
+    }
+
+    /**
+     * Converts an energy sum given in Wh or MWh to kWh, sums in kWh or an unknown unit are kept.
+     */
+    private static void toKwh(EfergyEngageMeasurement measurement) {
+        String unit = measurement.getUnit();
+        if (KWH.equalsIgnoreCase(unit)) {
+            measurement.setUnit(KWH);
+        } else if ("Wh".equalsIgnoreCase(unit)) {
+            measurement.setValue(measurement.getValue() / 1000);
+            measurement.setUnit(KWH);
+        } else if ("MWh".equalsIgnoreCase(unit)) {
+            measurement.setValue(measurement.getValue() * 1000);
+            measurement.setUnit(KWH);
+        }
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Reads an error description given either as a plain value or as an object with a desc field.
+     */
+    private static String nextError(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return nextString(reader);
+        }
+        String error = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("desc".equals(reader.nextName())) {
+                error = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return error != null ? error : "";
+    }
+
+    /**
+     * Fails a response which passed the status check but lacks a field the measurement is made of,
+     * so that no default value is ever posted in its place.
+     */
+    private static void checkField(boolean present, String name) {
+        if (!present) {
+            throw new EfergyEngageException("Efergy response without " + name);
+        }
+    }
+
+    private static void checkStatus(String status, String error) {
+        if (status != null && !STATUS_OK.equals(status) || error != null && status == null) {
+            String message = "Efergy response status: " + status + (error != null ? ", " + error : "");
+            if (error != null && error.toLowerCase().contains("token")) {
+                throw new EfergyEngageAuthException(message);
+            }
+            throw new EfergyEngageException(message);
+        }
+    }
+}
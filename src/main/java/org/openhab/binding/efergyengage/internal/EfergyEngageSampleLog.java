@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only log of (timestamp, watts) samples in a memory-mapped file, so that readings survive
+ * restarts of openHAB. The file holds the newest capacity samples: when it is full, every append
+ * replaces the oldest sample.
+ * <p>
+ * Layout: a header of magic, version, the state and capacity, then capacity + 1 slots of 12 byte records
+ * (long time, float watts) used as a ring. The state is a single aligned long holding the slot of the
+ * oldest sample and the number of samples, so it never tears. A record is written to the spare slot
+ * outside the samples before the state takes it in, so a crash loses at most the sample being appended.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageSampleLog {
+
+    /**
+     * Receives the samples of the log in ascending time order.
+     */
+    interface Visitor {
+        void sample(long time, float watts);
+    }
+
+    private static final int MAGIC = 0x45464745;
+    private static final int VERSION = 2;
+    private static final int STATE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int HEADER = 24;
+    private static final int RECORD = 12;
+    //header and samples of the first version, which moved the newer half to the front when full
+    private static final int VERSION_1 = 1;
+    private static final int VERSION_1_HEADER = 16;
+    //appends between two flushes of the mapping to disk
+    private static final int FORCE_INTERVAL = 32;
+
+    private final File file;
+    private final int capacity;
+    private final int slots;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+
+    private int start;
+    private int count;
+    private long lastTime;
+    private int unforced;
+
+    /**
+     * Opens the log, keeping the newest samples of an existing file if its capacity or version differs.
+     */
+    EfergyEngageSampleLog(File file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.slots = capacity + 1;
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            long[] times = null;
+            float[] watts = null;
+            boolean kept = false;
+            if (raf.length() >= VERSION_1_HEADER) {
+                raf.seek(0);
+                int magic = raf.readInt();
+                int version = raf.readInt();
+                if (magic == MAGIC && version == VERSION && raf.length() >= HEADER) {
+                    long state = raf.readLong();
+                    int oldStart = (int) (state >>> 32);
+                    int oldCount = (int) state;
+                    int oldCapacity = raf.readInt();
+                    if (oldCapacity > 0 && oldStart >= 0 && oldStart <= oldCapacity && oldCount >= 0
+                            && oldCount <= oldCapacity && raf.length() >= HEADER + (oldCapacity + 1L) * RECORD) {
+                        if (oldCapacity == capacity) {
+                            start = oldStart;
+                            count = oldCount;
+                            kept = true;
+                        } else {
+                            //resized, keep the newest samples
+                            int existing = Math.min(oldCount, capacity);
+                            times = new long[existing];
+                            watts = new float[existing];
+                            for (int i = 0; i < existing; i++) {
+                                raf.seek(HEADER + (long) ((oldStart + oldCount - existing + i) % (oldCapacity + 1)) * RECORD);
+                                times[i] = raf.readLong();
+                                watts[i] = raf.readFloat();
+                            }
+                        }
+                    }
+                } else if (magic == MAGIC && version == VERSION_1) {
+                    int oldCapacity = raf.readInt();
+                    int oldCount = raf.readInt();
+                    if (oldCount >= 0 && oldCount <= oldCapacity
+                            && raf.length() >= VERSION_1_HEADER + (long) oldCount * RECORD) {
+                        int existing = Math.min(oldCount, capacity);
+                        times = new long[existing];
+                        watts = new float[existing];
+                        raf.seek(VERSION_1_HEADER + (long) (oldCount - existing) * RECORD);
+                        for (int i = 0; i < existing; i++) {
+                            times[i] = raf.readLong();
+                            watts[i] = raf.readFloat();
+                        }
+                    }
+                }
+            }
+
+            raf.setLength(HEADER + (long) slots * RECORD);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            if (!kept) {
+                //emptied first, so that a crash while the samples are rewritten leaves an empty log
+                buffer.putLong(STATE_OFFSET, 0);
+                buffer.force();
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                if (times != null) {
+                    for (int i = 0; i < times.length; i++) {
+                        buffer.putLong(HEADER + i * RECORD, times[i]);
+                        buffer.putFloat(HEADER + i * RECORD + 8, watts[i]);
+                    }
+                    count = times.length;
+                }
+                buffer.putLong(STATE_OFFSET, count);
+                buffer.force();
+            }
+            lastTime = count > 0 ? buffer.getLong(offset(count - 1)) : 0;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return time of the newest sample, 0 if the log is empty
+     */
+    synchronized long getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * Appends a sample, samples not newer than the last one are ignored. A full log drops its oldest sample.
+     */
+    synchronized void append(long time, float watts) {
+        if (time <= lastTime) {
+            return;
+        }
+        //the slot after the newest sample is never one of the samples
+        int offset = offset(count);
+        buffer.putLong(offset, time);
+        buffer.putFloat(offset + 8, watts);
+        if (count == capacity) {
+            start = (start + 1) % slots;
+        } else {
+            count++;
+        }
+        buffer.putLong(STATE_OFFSET, (long) start << 32 | count);
+        lastTime = time;
+        if (++unforced >= FORCE_INTERVAL) {
+            force();
+        }
+    }
+
+    /**
+     * Visits the newest samples, at most limit of them, from the oldest to the newest.
+     */
+    synchronized void replay(int limit, Visitor visitor) {
+        for (int i = Math.max(0, count - limit); i < count; i++) {
+            int offset = offset(i);
+            visitor.sample(buffer.getLong(offset), buffer.getFloat(offset + 8));
+        }
+    }
+
+    /**
+     * Drops all samples, e.g. when the log belongs to another account after a change of credentials.
+     */
+    synchronized void clear() {
+        start = 0;
+        count = 0;
+        lastTime = 0;
+        buffer.putLong(STATE_OFFSET, 0);
+        force();
+    }
+
+    synchronized void close() {
+        force();
+        try {
+            raf.close();
+        } catch (IOException e) {
+            //the mapping stays valid until it is collected
+        }
+    }
+
+    /**
+     * @return offset of the i-th sample from the oldest one
+     */
+    private int offset(int i) {
+        return HEADER + (start + i) % slots * RECORD;
+    }
+
+    private void force() {
+        unforced = 0;
+        buffer.force();
+    }
+}
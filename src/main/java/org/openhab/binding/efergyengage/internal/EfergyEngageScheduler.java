@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+/**
+ * Adaptive polling schedule learning the reporting period of the sensor from successive
+ * last_reading_time values. The next poll is planned just after the next reading is expected,
+ * polls returning an unchanged reading back off exponentially from the learned period, so that a
+ * missed reading is looked for again when the next one is due.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageScheduler {
+
+    //delay after the expected reading time giving the server time to publish it
+    private static final long MARGIN = 2000;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final long fallbackInterval;
+
+    private long lastReading;
+    private long period;
+    private int misses;
+    private long nextPoll;
+
+    /**
+     * @param minInterval shortest time between two polls
+     * @param maxInterval longest time between two polls while backing off
+     * @param fallbackInterval time between polls while no reading time is known
+     */
+    EfergyEngageScheduler(long minInterval, long maxInterval, long fallbackInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+        this.fallbackInterval = fallbackInterval;
+    }
+
+    /**
+     * @return true if the schedule was created with these intervals, so that its learned period can be kept
+     */
+    boolean hasSettings(long minInterval, long maxInterval, long fallbackInterval) {
+        return this.minInterval == minInterval && this.maxInterval == Math.max(minInterval, maxInterval)
+                && this.fallbackInterval == fallbackInterval;
+    }
+
+    synchronized boolean isDue(long now) {
+        return now >= nextPoll;
+    }
+
+    /**
+     * Plans the next poll from the last_reading_time of a freshly read instant measurement.
+     */
+    synchronized void onReading(long readingTime, long now) {
+        if (readingTime > lastReading) {
+            if (lastReading > 0) {
+                long delta = readingTime - lastReading;
+                //a shorter gap means readings were missed before, so it is the better estimate
+                period = period == 0 || delta < period ? delta : (3 * period + delta) / 4;
+            }
+            lastReading = readingTime;
+            misses = 0;
+            schedule(period > 0 ? readingTime + period + MARGIN : now + minInterval, now);
+        } else {
+            misses++;
+            long base = period > 0 ? period : minInterval;
+            schedule(now + Math.min(maxInterval, base << Math.min(misses - 1, 16)), now);
+        }
+    }
+
+    /**
+     * Plans the next poll after a cycle which brought no reading time.
+     */
+    synchronized void onNoReading(long now) {
+        schedule(now + fallbackInterval, now);
+    }
+
+    private void schedule(long time, long now) {
+        nextPoll = Math.max(now + minInterval, Math.min(now + maxInterval, time));
+    }
+}
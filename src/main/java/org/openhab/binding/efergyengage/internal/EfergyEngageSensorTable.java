@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Readings of all sensors of an account decoded from one getCurrentValuesSummary response, kept as
+ * sorted sensor ids and flat arrays of their channels, e.g. the three phases of a 3-phase clamp.
+ * As a measurement it holds the sum of all sensors at the time of the latest reading.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageSensorTable extends EfergyEngageMeasurement {
+
+    private final String[] sids;
+    //channels of sensor i are values[offsets[i]] up to values[offsets[i + 1]]
+    private final int[] offsets;
+    private final float[] values;
+    private final long[] times;
+
+    private EfergyEngageSensorTable(String[] sids, int[] offsets, float[] values, long[] times) {
+        this.sids = sids;
+        this.offsets = offsets;
+        this.values = values;
+        this.times = times;
+        float sum = 0;
+        long latest = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+        }
+        for (long time : times) {
+            latest = Math.max(latest, time);
+        }
+        setValue(sum);
+        setMilis(latest);
+    }
+
+    int size() {
+        return sids.length;
+    }
+
+    /**
+     * @param phase channel starting at 1, 0 for the sum of all channels of the sensor
+     * @return the reading in W, NaN if the sensor or channel is not in the table
+     */
+    float getValue(String sid, int phase) {
+        int i = Arrays.binarySearch(sids, sid);
+        if (i < 0) {
+            return Float.NaN;
+        }
+        int from = offsets[i];
+        int to = offsets[i + 1];
+        if (phase > 0) {
+            return phase <= to - from ? values[from + phase - 1] : Float.NaN;
+        }
+        float sum = 0;
+        for (int j = from; j < to; j++) {
+            sum += values[j];
+        }
+        return sum;
+    }
+
+    /**
+     * @return time of the reading of the sensor in ms, 0 if it is not in the table
+     */
+    long getTime(String sid) {
+        int i = Arrays.binarySearch(sids, sid);
+        return i >= 0 ? times[i] : 0;
+    }
+
+    /**
+     * Collects the sensors of a response, the first reading of a sensor id wins.
+     */
+    static class Builder {
+
+        private final Map<String, Row> rows = new TreeMap<>();
+
+        void add(String sid, long time, float[] channels) {
+            if (!rows.containsKey(sid)) {
+                rows.put(sid, new Row(time, channels));
+            }
+        }
+
+        EfergyEngageSensorTable build() {
+            String[] sids = rows.keySet().toArray(new String[rows.size()]);
+            int[] offsets = new int[sids.length + 1];
+            long[] times = new long[sids.length];
+            for (int i = 0; i < sids.length; i++) {
+                Row row = rows.get(sids[i]);
+                times[i] = row.time;
+                offsets[i + 1] = offsets[i] + row.channels.length;
+            }
+            float[] values = new float[offsets[sids.length]];
+            for (int i = 0; i < sids.length; i++) {
+                float[] channels = rows.get(sids[i]).channels;
+                System.arraycopy(channels, 0, values, offsets[i], channels.length);
+            }
+            return new EfergyEngageSensorTable(sids, offsets, values, times);
+        }
+    }
+
+    private static class Row {
+
+        private final long time;
+        private final float[] channels;
+
+        Row(long time, float[] channels) {
+            this.time = time;
+            this.channels = channels;
+        }
+    }
+}
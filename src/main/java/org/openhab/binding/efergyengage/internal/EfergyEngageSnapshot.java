@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Small properties file keeping the token and the last measurements of an account across restarts,
+ * so the items get their values and the first requests skip the login right after a start. The
+ * snapshot carries a fingerprint of the server, credentials and offset it was taken with and is
+ * only used while they stay the same. As the token is a live credential, the file is only readable
+ * by its owner.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageSnapshot {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final String fingerprint;
+    private final String token;
+    private final long issued;
+    private final Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements;
+
+    EfergyEngageSnapshot(String fingerprint, String token, long issued,
+                         Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements) {
+        this.fingerprint = fingerprint;
+        this.token = token;
+        this.issued = issued;
+        this.measurements = measurements;
+    }
+
+    /**
+     * @return fingerprint of the settings, the password only entering as part of a hash
+     */
+    static String fingerprint(String url, String email, String password, String utcOffset) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((url + "\n" + email + "\n" + password + "\n" + utcOffset).getBytes(UTF_8));
+            return String.format("%064x", new BigInteger(1, hash));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    long getIssued() {
+        return issued;
+    }
+
+    Map<EfergyEngageBindingType, EfergyEngageMeasurement> getMeasurements() {
+        return measurements;
+    }
+
+    /**
+     * @return the snapshot in the file, null if there is none
+     */
+    static EfergyEngageSnapshot load(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream stream = new FileInputStream(file)) {
+            properties.load(stream);
+        }
+        Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements = new EnumMap<>(EfergyEngageBindingType.class);
+        try {
+            for (EfergyEngageBindingType type : EfergyEngageBindingType.values()) {
+                String value = properties.getProperty(type.getType() + ".value");
+                if (value != null) {
+                    EfergyEngageMeasurement measurement = new EfergyEngageMeasurement(Float.parseFloat(value),
+                            properties.getProperty(type.getType() + ".unit"));
+                    measurement.setMilis(Long.parseLong(properties.getProperty(type.getType() + ".time")));
+                    measurements.put(type, measurement);
+                }
+            }
+            return new EfergyEngageSnapshot(properties.getProperty("fingerprint", ""),
+                    properties.getProperty("token", ""), Long.parseLong(properties.getProperty("issued", "0")),
+                    measurements);
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Replaces the file by the snapshot, atomically so a crash leaves the previous one. The file is
+     * created readable by its owner only, with POSIX permissions where the file system has them.
+     */
+    void save(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("fingerprint", fingerprint);
+        properties.setProperty("token", token);
+        properties.setProperty("issued", Long.toString(issued));
+        for (Map.Entry<EfergyEngageBindingType, EfergyEngageMeasurement> entry : measurements.entrySet()) {
+            String type = entry.getKey().getType();
+            properties.setProperty(type + ".value", Float.toString(entry.getValue().getValue()));
+            properties.setProperty(type + ".unit", entry.getValue().getUnit());
+            properties.setProperty(type + ".time", Long.toString(entry.getValue().getMilis()));
+        }
+        //created anew, so neither a leftover temp file nor the umask widen the permissions
+        Path temp = new File(file.getPath() + ".tmp").toPath();
+        Files.deleteIfExists(temp);
+        if (temp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temp, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } else {
+            Files.createFile(temp);
+            File tempFile = temp.toFile();
+            tempFile.setReadable(false, false);
+            tempFile.setReadable(true, true);
+            tempFile.setWritable(false, false);
+            tempFile.setWritable(true, true);
+        }
+        try (OutputStream stream = Files.newOutputStream(temp)) {
+            properties.store(stream, "Efergy Engage snapshot");
+        }
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
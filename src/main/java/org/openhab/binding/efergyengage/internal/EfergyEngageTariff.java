@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tariff of the energy cost: a base rate per kWh, time-of-use bands overriding it during parts of
+ * the day, tiers adding a surcharge per kWh once the consumption of the month passes their
+ * threshold, and a standing charge per day. The bands are precomputed into the points of the day
+ * at which the rate changes, so the rate and the next change are found without any parsing.
+ * <p>
+ * Configured like
+ * tariff.rate=0.15, tariff.bands=07:00-23:00=0.28,12:00-14:00=-0.02, tariff.tiers=300=0.05,600=0.10 and
+ * tariff.standingCharge=0.40
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+final class EfergyEngageTariff {
+
+    static final int MINUTES_PER_DAY = 1440;
+
+    //minute of the day at which segment i starts and its rate, segment 0 starts at midnight
+    private final int[] changes;
+    private final double[] rates;
+    //monthly kWh above which the surcharge applies, ascending
+    private final double[] tiers;
+    private final double[] surcharges;
+    private final double standingCharge;
+
+    private EfergyEngageTariff(int[] changes, double[] rates, double[] tiers, double[] surcharges,
+                               double standingCharge) {
+        this.changes = changes;
+        this.rates = rates;
+        this.tiers = tiers;
+        this.surcharges = surcharges;
+        this.standingCharge = standingCharge;
+    }
+
+    /**
+     * @return the tariff configured by the tariff.* settings, null if there is none
+     * @throws IllegalArgumentException if a setting cannot be parsed
+     */
+    static EfergyEngageTariff parse(Map<String, Object> configuration) {
+        String rateString = (String) configuration.get("tariff.rate");
+        String bandsString = (String) configuration.get("tariff.bands");
+        String tiersString = (String) configuration.get("tariff.tiers");
+        String standingChargeString = (String) configuration.get("tariff.standingCharge");
+        if (StringUtils.isBlank(rateString) && StringUtils.isBlank(bandsString) && StringUtils.isBlank(tiersString)
+                && StringUtils.isBlank(standingChargeString)) {
+            return null;
+        }
+
+        double[] minuteRates = new double[MINUTES_PER_DAY];
+        Arrays.fill(minuteRates, StringUtils.isNotBlank(rateString) ? Double.parseDouble(rateString.trim()) : 0);
+        if (StringUtils.isNotBlank(bandsString)) {
+            for (String band : bandsString.split(",")) {
+                //HH:mm-HH:mm=rate, the rate is split off first so that it may be negative, e.g. a feed-in credit.
+                //A band ending before it starts wraps around midnight, 00:00-24:00 is the whole day
+                String[] parts = band.trim().split("=", 2);
+                String[] times = parts[0].split("-");
+                if (parts.length != 2 || times.length != 2) {
+                    throw new IllegalArgumentException("tariff band '" + band + "' must look like 07:00-23:00=0.28");
+                }
+                int start = parseMinute(times[0]) % MINUTES_PER_DAY;
+                int length = parseMinute(times[1]) - start;
+                if (length < 0) {
+                    length += MINUTES_PER_DAY;
+                }
+                if (length == 0) {
+                    throw new IllegalArgumentException("tariff band '" + band
+                            + "' is empty, a band of the whole day is 00:00-24:00");
+                }
+                double rate = Double.parseDouble(parts[1].trim());
+                for (int i = 0; i < length; i++) {
+                    minuteRates[(start + i) % MINUTES_PER_DAY] = rate;
+                }
+            }
+        }
+
+        List<Integer> changes = new ArrayList<>();
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            if (minute == 0 || minuteRates[minute] != minuteRates[minute - 1]) {
+                changes.add(minute);
+            }
+        }
+        int[] changeArray = new int[changes.size()];
+        double[] rateArray = new double[changes.size()];
+        for (int i = 0; i < changeArray.length; i++) {
+            changeArray[i] = changes.get(i);
+            rateArray[i] = minuteRates[changeArray[i]];
+        }
+
+        double[] tiers = new double[0];
+        double[] surcharges = new double[0];
+        if (StringUtils.isNotBlank(tiersString)) {
+            String[] tierStrings = tiersString.split(",");
+            tiers = new double[tierStrings.length];
+            surcharges = new double[tierStrings.length];
+            for (int i = 0; i < tierStrings.length; i++) {
+                String[] parts = tierStrings[i].trim().split("=");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("tariff tier '" + tierStrings[i] + "' must look like 300=0.05");
+                }
+                tiers[i] = Double.parseDouble(parts[0].trim());
+                surcharges[i] = Double.parseDouble(parts[1].trim());
+                if (i > 0 && tiers[i] <= tiers[i - 1]) {
+                    throw new IllegalArgumentException("tariff tiers must be given in ascending order");
+                }
+            }
+        }
+
+        double standingCharge = StringUtils.isNotBlank(standingChargeString)
+                ? Double.parseDouble(standingChargeString.trim()) : 0;
+        return new EfergyEngageTariff(changeArray, rateArray, tiers, surcharges, standingCharge);
+    }
+
+    /**
+     * @return index of the rate segment holding the minute of the day
+     */
+    int segment(int minuteOfDay) {
+        int i = Arrays.binarySearch(changes, minuteOfDay);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    double getRate(int segment) {
+        return rates[segment];
+    }
+
+    /**
+     * @return minute of the day at which the segment ends, MINUTES_PER_DAY for the last one
+     */
+    int getSegmentEnd(int segment) {
+        return segment + 1 < changes.length ? changes[segment + 1] : MINUTES_PER_DAY;
+    }
+
+    /**
+     * @return the surcharge per kWh of all tiers passed by the consumption of the month
+     */
+    double getSurcharge(double monthEnergy) {
+        double surcharge = 0;
+        for (int i = 0; i < tiers.length && monthEnergy > tiers[i]; i++) {
+            surcharge += surcharges[i];
+        }
+        return surcharge;
+    }
+
+    double getStandingCharge() {
+        return standingCharge;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EfergyEngageTariff)) {
+            return false;
+        }
+        EfergyEngageTariff other = (EfergyEngageTariff) o;
+        return Arrays.equals(changes, other.changes) && Arrays.equals(rates, other.rates)
+                && Arrays.equals(tiers, other.tiers) && Arrays.equals(surcharges, other.surcharges)
+                && Double.compare(standingCharge, other.standingCharge) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(changes);
+        result = 31 * result + Arrays.hashCode(rates);
+        result = 31 * result + Arrays.hashCode(tiers);
+        result = 31 * result + Arrays.hashCode(surcharges);
+        return 31 * result + Double.valueOf(standingCharge).hashCode();
+    }
+
+    /**
+     * @return minute of the day of the time, MINUTES_PER_DAY for 24:00
+     */
+    private static int parseMinute(String time) {
+        String[] parts = time.trim().split(":");
+        int minute = Integer.parseInt(parts[0]) * 60 + (parts.length > 1 ? Integer.parseInt(parts[1]) : 0);
+        if (minute < 0 || minute > MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("tariff time '" + time + "' must be between 00:00 and 24:00");
+        }
+        return minute;
+    }
+}
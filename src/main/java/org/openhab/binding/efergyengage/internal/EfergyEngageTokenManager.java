@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.io.IOException;
+
+/**
+ * Keeps the Efergy Engage token. Logins are single-flight: however many requests find
+ * the same token rejected, only one of them logs in again and the others reuse its token.
+ * Failed logins are backed off exponentially, tokens older than the lifetime are renewed
+ * before they are used.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+class EfergyEngageTokenManager {
+
+    private static final long MIN_BACKOFF = 10000;
+    private static final long MAX_BACKOFF = 900000;
+
+    interface Login {
+        String login() throws IOException;
+    }
+
+    private final Login login;
+    private final Object lock = new Object();
+
+    private volatile String token = "";
+    private volatile long issued;
+    private volatile long lifetime;
+
+    //guarded by lock
+    private int failures;
+    private long nextLogin;
+
+    EfergyEngageTokenManager(Login login) {
+        this.login = login;
+    }
+
+    /**
+     * @param lifetime time after which the token is renewed proactively, 0 renews only rejected tokens
+     */
+    void setLifetime(long lifetime) {
+        this.lifetime = lifetime;
+    }
+
+    /**
+     * Returns a valid token, logging in if there is none yet or the current one got too old.
+     */
+    String getToken() throws IOException {
+        String current = token;
+        if (current.isEmpty() || (lifetime > 0 && System.currentTimeMillis() - issued >= lifetime)) {
+            return refresh(current);
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the rejected token. Callers arriving while another one logs in wait for it
+     * and get its token instead of logging in once more.
+     *
+     * @param rejected token the server refused
+     */
+    String refresh(String rejected) throws IOException {
+        synchronized (lock) {
+            String current = token;
+            if (!current.isEmpty() && !current.equals(rejected)) {
+                return current;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now < nextLogin) {
+                throw new EfergyEngageException("Efergy login suspended for " + (nextLogin - now)
+                        + "ms after " + failures + " failed attempts");
+            }
+
+            try {
+                current = login.login();
+            } catch (IOException | RuntimeException e) {
+                failures++;
+                nextLogin = now + Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(failures - 1, 16));
+                throw e;
+            }
+            failures = 0;
+            nextLogin = 0;
+            issued = now;
+            token = current;
+            return current;
+        }
+    }
+
+    /**
+     * @return the current token without logging in, empty if there is none
+     */
+    String peekToken() {
+        return token;
+    }
+
+    long getIssued() {
+        return issued;
+    }
+
+    /**
+     * Takes over a token saved earlier unless there is one already.
+     */
+    void restore(String token, long issued) {
+        synchronized (lock) {
+            if (this.token.isEmpty()) {
+                this.token = token;
+                this.issued = issued;
+            }
+        }
+    }
+
+    /**
+     * Forgets the token and any login backoff, e.g. after the credentials have changed.
+     */
+    void reset() {
+        synchronized (lock) {
+            token = "";
+            failures = 0;
+            nextLogin = 0;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Transport used by the binding to talk to the Efergy Engage server.
+ * The response stream is only valid inside the handler and is always closed by the transport.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public interface EfergyEngageTransport {
+
+    <T> T get(String url, ResponseHandler<T> handler) throws IOException;
+
+    /**
+     * Aborts the request the thread is running, which then fails with an IOException.
+     * Does nothing if the thread is not running a request.
+     */
+    void abort(Thread thread);
+
+    /**
+     * Releases the transport, aborting the requests still running.
+     */
+    void close();
+
+    interface ResponseHandler<T> {
+        T handle(InputStream response) throws IOException;
+    }
+}
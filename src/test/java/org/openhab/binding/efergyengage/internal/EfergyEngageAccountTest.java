@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.efergyengage.EfergyEngageBindingType;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageAccountTest {
+
+    private static final String URL = "http://efergy.test";
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 3600000;
+
+    private final List<Float> published = Collections.synchronizedList(new ArrayList<Float>());
+    private final Transport transport = new Transport();
+    private EfergyEngageAccount account;
+    private File logFile;
+    private File snapshotFile;
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("efergyengage", ".log");
+        snapshotFile = new File(logFile.getPath() + ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        if (account != null) {
+            account.close();
+        }
+        assertTrue(logFile.delete());
+        snapshotFile.delete();
+    }
+
+    private void open(long ttl) {
+        account = new EfergyEngageAccount("test", Collections.singletonMap(EfergyEngageBindingType.INSTANT, ttl),
+                new Listener());
+        account.setTransport(transport);
+        account.setSampleLog(logFile, 64, 5 * MINUTE, HOUR);
+    }
+
+    @Test
+    public void changedCredentialsDropOldReadings() throws Exception {
+        //the instant reading stays cached for an hour, so a second cycle is served from the cache
+        open(HOUR);
+        account.configure(URL, "old@example.com", "secret", "0");
+        poll();
+        assertEquals(Collections.singletonList(1000f), published);
+        assertEquals(1, account.getHistory().size());
+
+        published.clear();
+        account.configure(URL, "new@example.com", "secret", "0");
+        assertEquals(0, account.getHistory().size());
+        poll();
+        assertEquals(Collections.singletonList(2000f), published);
+        assertEquals(2000f, account.getHistory().getAverage(3600000, System.currentTimeMillis()), 0);
+
+        account.close();
+        EfergyEngageSampleLog log = new EfergyEngageSampleLog(logFile, 64);
+        try {
+            final List<Float> logged = new ArrayList<>();
+            log.replay(log.size(), new EfergyEngageSampleLog.Visitor() {
+                @Override
+                public void sample(long time, float watts) {
+                    logged.add(watts);
+                }
+            });
+            assertEquals(Collections.singletonList(2000f), logged);
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void changedOffsetKeepsReadings() throws Exception {
+        open(HOUR);
+        account.configure(URL, "old@example.com", "secret", "0");
+        poll();
+        account.configure(URL, "old@example.com", "secret", "-60");
+        assertEquals(1, account.getHistory().size());
+    }
+
+    @Test
+    public void backfilledSamplesReachEveryConsumer() throws Exception {
+        open(0);
+        account.configure(URL, "old@example.com", "secret", "0");
+        account.setTariff(EfergyEngageTariffTest.parse("1", null, null, null), 2 * HOUR);
+        //2016-01-10 10:00 UTC, the next reading comes 10 minutes later, the server holds 7 kW in between
+        transport.time = 1452420000000L;
+        transport.step = 10 * MINUTE;
+        poll();
+        poll();
+        assertEquals(11, account.getHistory().size());
+        //1000 W at both ends, a ramp of a minute to and from 7000 W in the 8 minutes between
+        assertEquals((4000 + 8 * 7000 + 4000) / 60000.0, account.getCostMeter().getDayCost(), 1e-6);
+    }
+
+    @Test
+    public void snapshotIsSavedWhenTokenChangesAndOnClose() throws Exception {
+        open(HOUR);
+        account.configure(URL, "old@example.com", "secret", "0");
+        account.setSnapshot(snapshotFile);
+        poll();
+        assertTrue(snapshotFile.delete());
+        poll();
+        assertFalse(snapshotFile.exists());
+        account.close();
+        assertTrue(snapshotFile.exists());
+    }
+
+    @Test
+    public void restoredSnapshotDropsTotalsOfEndedPeriods() throws Exception {
+        open(HOUR);
+        account.configure(URL, "old@example.com", "secret", "0");
+        account.setSnapshot(snapshotFile);
+        long now = System.currentTimeMillis();
+        Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements = new EnumMap<>(EfergyEngageBindingType.class);
+        measurements.put(EfergyEngageBindingType.DAY_TOTAL, total(5, now - 48 * HOUR));
+        measurements.put(EfergyEngageBindingType.MONTH_TOTAL, total(50, now));
+        new EfergyEngageSnapshot(EfergyEngageSnapshot.fingerprint(URL, "old@example.com", "secret", "0"), "", 0,
+                measurements).save(snapshotFile);
+
+        assertTrue(account.restoreSnapshot());
+        assertEquals(EnumSet.of(EfergyEngageBindingType.MONTH_TOTAL), account.getLatest().keySet());
+        assertEquals(Collections.singletonList(50f), published);
+    }
+
+    private static EfergyEngageMeasurement total(float value, long time) {
+        EfergyEngageMeasurement measurement = new EfergyEngageMeasurement(value, "kWh");
+        measurement.setMilis(time);
+        return measurement;
+    }
+
+    private void poll() throws InterruptedException {
+        assertTrue(account.poll());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (account.isBusy()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertFalse(account.isBusy());
+    }
+
+    private class Listener implements EfergyEngageAccount.Listener {
+
+        @Override
+        public Set<EfergyEngageBindingType> getEndpoints(EfergyEngageAccount account) {
+            return EnumSet.of(EfergyEngageBindingType.INSTANT);
+        }
+
+        @Override
+        public void publish(EfergyEngageAccount account,
+                            Map<EfergyEngageBindingType, EfergyEngageMeasurement> measurements) {
+            for (EfergyEngageMeasurement measurement : measurements.values()) {
+                published.add(measurement.getValue());
+            }
+        }
+
+        @Override
+        public void publishMetrics(EfergyEngageAccount account) {
+        }
+
+        @Override
+        public void publishError(EfergyEngageAccount account, EfergyEngageBindingType endpoint) {
+        }
+    }
+
+    /**
+     * Server of two meters, the token of the old account reads 1000 W and that of the new one 2000 W.
+     * The history holds a 7000 W sample every minute.
+     */
+    private static class Transport implements EfergyEngageTransport {
+
+        private volatile long time = System.currentTimeMillis();
+        private volatile long step = 1;
+
+        @Override
+        public synchronized <T> T get(String url, ResponseHandler<T> handler) throws IOException {
+            String json;
+            if (url.contains("/mobile/get_token")) {
+                json = "{\"status\":\"ok\",\"token\":\"" + (url.contains("old%40") ? "old" : "new") + "\"}";
+            } else if (url.contains("/mobile_proxy/getInstant")) {
+                json = "{\"reading\":" + (url.contains("token=old") ? 1000 : 2000) + ",\"last_reading_time\":"
+                        + time + ",\"status\":\"ok\"}";
+                time += step;
+            } else if (url.contains("/mobile_proxy/getHV")) {
+                long from = Long.parseLong(url.replaceAll(".*fromTime=(\\d+).*", "$1"));
+                long to = Long.parseLong(url.replaceAll(".*toTime=(\\d+).*", "$1"));
+                StringBuilder data = new StringBuilder();
+                for (long second = (from + 59) / 60 * 60; second < to; second += 60) {
+                    data.append(data.length() > 0 ? "," : "").append("{\"").append(second).append("\":[7000]}");
+                }
+                json = "{\"status\":\"ok\",\"data\":[" + data + "]}";
+            } else {
+                throw new IOException("Unexpected request " + url);
+            }
+            return handler.handle(new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8"))));
+        }
+
+        @Override
+        public void abort(Thread thread) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
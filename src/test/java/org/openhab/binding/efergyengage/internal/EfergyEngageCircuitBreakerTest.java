@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageCircuitBreakerTest {
+
+    private static final long DELAY = 10000;
+    private static final long MAX_DELAY = 40000;
+    private static final long PROBE_TIMEOUT = 5000;
+
+    private final EfergyEngageCircuitBreaker breaker = new EfergyEngageCircuitBreaker();
+
+    @Before
+    public void setUp() {
+        breaker.configure(3, DELAY, MAX_DELAY, PROBE_TIMEOUT);
+    }
+
+    @Test
+    public void opensAfterThresholdFailures() {
+        assertFalse(breaker.onFailure(0));
+        assertFalse(breaker.onFailure(0));
+        assertEquals(EfergyEngageCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.onFailure(1000));
+        assertEquals(EfergyEngageCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(1000));
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertFalse(breaker.onSuccess());
+        assertFalse(breaker.onFailure(0));
+        assertFalse(breaker.onFailure(0));
+        assertEquals(EfergyEngageCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void backoffIsJitteredBetweenHalfAndFullDelay() {
+        open(1000);
+        long retryAt = breaker.getRetryAt();
+        assertTrue(retryAt >= 1000 + DELAY / 2);
+        assertTrue(retryAt <= 1000 + DELAY);
+    }
+
+    @Test
+    public void probeSuccessCloses() {
+        open(0);
+        long retryAt = breaker.getRetryAt();
+        assertFalse(breaker.allowRequest(retryAt - 1));
+        assertTrue(breaker.allowRequest(retryAt));
+        assertEquals(EfergyEngageCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        //only the single probe is let through
+        assertFalse(breaker.allowRequest(retryAt + 1));
+        assertTrue(breaker.onSuccess());
+        assertEquals(EfergyEngageCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(retryAt + 1));
+    }
+
+    @Test
+    public void probeFailureDoublesBackoffUpToMaximum() {
+        open(0);
+        long now = breaker.getRetryAt();
+        long[] delays = {2 * DELAY, 4 * DELAY, MAX_DELAY, MAX_DELAY};
+        for (long delay : delays) {
+            assertTrue(breaker.allowRequest(now));
+            assertFalse(breaker.onFailure(now));
+            assertEquals(EfergyEngageCircuitBreaker.State.OPEN, breaker.getState());
+            long retryAt = breaker.getRetryAt();
+            assertTrue(retryAt >= now + Math.min(delay, MAX_DELAY) / 2);
+            assertTrue(retryAt <= now + Math.min(delay, MAX_DELAY));
+            now = retryAt;
+        }
+    }
+
+    @Test
+    public void lostProbeIsGivenUpAfterTimeout() {
+        open(0);
+        long retryAt = breaker.getRetryAt();
+        assertTrue(breaker.allowRequest(retryAt));
+        assertFalse(breaker.allowRequest(retryAt + PROBE_TIMEOUT - 1));
+        assertTrue(breaker.allowRequest(retryAt + PROBE_TIMEOUT));
+        assertEquals(EfergyEngageCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void lateFailureKeepsBreakerOpen() {
+        open(0);
+        long retryAt = breaker.getRetryAt();
+        assertFalse(breaker.onFailure(1));
+        assertEquals(retryAt, breaker.getRetryAt());
+    }
+
+    private void open(long now) {
+        breaker.onFailure(now);
+        breaker.onFailure(now);
+        assertTrue(breaker.onFailure(now));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageCostMeterTest {
+
+    private static final long HOUR = 3600000;
+    private static final long MAX_GAP = 2 * HOUR;
+
+    @Test
+    public void nothingBeforeFirstReading() {
+        EfergyEngageCostMeter meter = meter(EfergyEngageTariffTest.parse("0.10", null, null, null), 0);
+        assertTrue(Double.isNaN(meter.getDayCost()));
+        assertTrue(Double.isNaN(meter.getMonthCost()));
+    }
+
+    @Test
+    public void splitsIntervalAtBandChange() {
+        EfergyEngageCostMeter meter = meter(EfergyEngageTariffTest.parse("0.10", "07:00-23:00=0.20", null, null), 0);
+        meter.add(time(2016, 1, 10, 6, 30), 1000);
+        meter.add(time(2016, 1, 10, 7, 30), 1000);
+        //half a kWh at each rate
+        assertEquals(0.15, meter.getDayCost(), 1e-9);
+    }
+
+    @Test
+    public void trapezoidalEnergy() {
+        EfergyEngageCostMeter meter = meter(EfergyEngageTariffTest.parse("1", null, null, null), 0);
+        meter.add(time(2016, 1, 10, 10, 0), 0);
+        meter.add(time(2016, 1, 10, 11, 0), 2000);
+        assertEquals(1, meter.getDayCost(), 1e-9);
+    }
+
+    @Test
+    public void dayAndMonthRollOver() {
+        EfergyEngageCostMeter meter = meter(EfergyEngageTariffTest.parse("0.10", "07:00-23:00=0.20", null, "0.50"), 0);
+        meter.add(time(2016, 1, 31, 22, 0), 1000);
+        meter.add(time(2016, 1, 31, 23, 0), 1000);
+        assertEquals(0.20 + 0.50, meter.getDayCost(), 1e-9);
+        //standing charge of all 31 days of January
+        assertEquals(0.20 + 0.50 * 31, meter.getMonthCost(), 1e-9);
+
+        meter.add(time(2016, 2, 1, 0, 0), 1000);
+        assertEquals(0.50, meter.getDayCost(), 1e-9);
+        assertEquals(0.50, meter.getMonthCost(), 1e-9);
+
+        meter.add(time(2016, 2, 1, 1, 0), 1000);
+        assertEquals(0.10 + 0.50, meter.getDayCost(), 1e-9);
+        assertEquals(0.10 + 0.50, meter.getMonthCost(), 1e-9);
+    }
+
+    @Test
+    public void tierFollowsEnergyOfTheMonth() {
+        EfergyEngageCostMeter meter = meter(EfergyEngageTariffTest.parse("0.10", null, "5=0.05", null), 0);
+        meter.add(time(2016, 1, 10, 1, 0), 10000);
+        meter.add(time(2016, 1, 10, 2, 0), 10000);
+        assertEquals(1.0, meter.getDayCost(), 1e-9);
+        meter.add(time(2016, 1, 10, 3, 0), 10000);
+        assertEquals(1.0 + 1.5, meter.getDayCost(), 1e-9);
+    }
+
+    @Test
+    public void gapIsNotCharged() {
+        EfergyEngageCostMeter meter = meter(EfergyEngageTariffTest.parse("0.10", null, null, null), 0);
+        meter.add(time(2016, 1, 10, 10, 0), 1000);
+        meter.add(time(2016, 1, 10, 14, 0), 1000);
+        assertEquals(0, meter.getDayCost(), 1e-9);
+        meter.add(time(2016, 1, 10, 15, 0), 1000);
+        assertEquals(0.10, meter.getDayCost(), 1e-9);
+    }
+
+    @Test
+    public void dayFollowsEfergyOffset() {
+        EfergyEngageTariff tariff = EfergyEngageTariffTest.parse("0.10", null, null, null);
+        EfergyEngageCostMeter utc = meter(tariff, 0);
+        utc.add(time(2016, 1, 10, 22, 30), 1000);
+        utc.add(time(2016, 1, 10, 23, 30), 1000);
+        assertEquals(0.10, utc.getDayCost(), 1e-9);
+        //UTC+1: local midnight is at 23:00 UTC, the half hour before it belongs to the previous day
+        EfergyEngageCostMeter local = meter(tariff, -60);
+        local.add(time(2016, 1, 10, 22, 30), 1000);
+        local.add(time(2016, 1, 10, 23, 30), 1000);
+        assertEquals(0.05, local.getDayCost(), 1e-9);
+    }
+
+    private static EfergyEngageCostMeter meter(EfergyEngageTariff tariff, int utcOffset) {
+        return new EfergyEngageCostMeter(tariff, MAX_GAP, utcOffset);
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the incremental windows of the history against a naive recompute over the retained readings.
+ *
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageHistoryTest {
+
+    private static final int CAPACITY = 64;
+    private static final long[] LENGTHS = {1000, 30000, 120000, 600000};
+
+    private final EfergyEngageHistory history = new EfergyEngageHistory(CAPACITY);
+    private final List<long[]> times = new ArrayList<>();
+    private final List<Float> watts = new ArrayList<>();
+
+    @Test
+    public void emptyWindowIsNaN() {
+        assertTrue(Float.isNaN(history.getAverage(60000, 1000)));
+        assertTrue(Float.isNaN(history.getMin(60000, 1000)));
+        assertTrue(Float.isNaN(history.getMax(60000, 1000)));
+        assertTrue(Float.isNaN(history.getPercentile(50, 60000, 1000)));
+    }
+
+    @Test
+    public void olderReadingsAreIgnored() {
+        history.add(2000, 100);
+        history.add(2000, 300);
+        history.add(1000, 500);
+        assertEquals(1, history.size());
+        assertEquals(100, history.getMax(60000, 2000), 0);
+    }
+
+    @Test
+    public void windowsMatchNaiveRecompute() {
+        Random random = new Random(42);
+        long time = 1000000;
+        //ask for some windows early so that they are maintained incrementally while the buffer wraps
+        history.getAverage(LENGTHS[1], time);
+        history.getMax(LENGTHS[3], time);
+        for (int i = 0; i < CAPACITY * 5; i++) {
+            time += 1 + random.nextInt(i % 50 == 0 ? 200000 : 10000);
+            float value = random.nextInt(4000) / 4f;
+            add(time, value);
+            if (i % 7 == 0) {
+                for (long length : LENGTHS) {
+                    check(length, time + random.nextInt(5000));
+                }
+            }
+        }
+        assertEquals(CAPACITY, history.size());
+    }
+
+    @Test
+    public void clearForgetsReadings() {
+        history.add(1000, 100);
+        history.getAverage(60000, 1000);
+        history.clear();
+        assertEquals(0, history.size());
+        assertTrue(Float.isNaN(history.getAverage(60000, 1000)));
+        history.add(500, 200);
+        assertEquals(200, history.getAverage(60000, 1000), 0);
+    }
+
+    private void add(long time, float value) {
+        history.add(time, value);
+        times.add(new long[]{time});
+        watts.add(value);
+    }
+
+    private void check(long length, long now) {
+        float[] window = new float[CAPACITY];
+        int n = 0;
+        double sum = 0;
+        for (int i = Math.max(0, times.size() - CAPACITY); i < times.size(); i++) {
+            if (times.get(i)[0] > now - length) {
+                window[n++] = watts.get(i);
+                sum += watts.get(i);
+            }
+        }
+        if (n == 0) {
+            assertTrue(Float.isNaN(history.getAverage(length, now)));
+            return;
+        }
+        float[] sorted = Arrays.copyOf(window, n);
+        Arrays.sort(sorted);
+        String message = "window " + length + " at " + now;
+        assertEquals(message, (float) (sum / n), history.getAverage(length, now), 0.01f);
+        assertEquals(message, sorted[0], history.getMin(length, now), 0);
+        assertEquals(message, sorted[n - 1], history.getMax(length, now), 0);
+        for (int percentile : new int[]{1, 50, 90, 100}) {
+            int rank = Math.max(0, (int) Math.ceil(percentile / 100.0 * n) - 1);
+            assertEquals(message + " p" + percentile, sorted[rank], history.getPercentile(percentile, length, now), 0);
+        }
+    }
+}
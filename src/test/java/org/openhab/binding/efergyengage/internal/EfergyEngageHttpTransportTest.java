@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageHttpTransportTest {
+
+    @Test
+    public void masksToken() {
+        assertEquals("https://engage.efergy.com/mobile_proxy/getEnergy?token=***&period=day&offset=-60",
+                EfergyEngageHttpTransport.mask(
+                        "https://engage.efergy.com/mobile_proxy/getEnergy?token=5a6b7c&period=day&offset=-60"));
+    }
+
+    @Test
+    public void masksPassword() {
+        assertEquals("https://engage.efergy.com/mobile/get_token?device=android&username=me%40example.com&password=***",
+                EfergyEngageHttpTransport.mask(
+                        "https://engage.efergy.com/mobile/get_token?device=android&username=me%40example.com&password=s3%26cret"));
+    }
+
+    @Test
+    public void keepsUrlWithoutSecrets() {
+        String url = "http://localhost:8080/mobile_proxy/getInstant?offset=-60";
+        assertEquals(url, EfergyEngageHttpTransport.mask(url));
+    }
+}
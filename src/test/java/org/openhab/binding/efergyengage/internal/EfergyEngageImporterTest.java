@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageImporterTest {
+
+    private static final long HOUR = 3600000;
+
+    private final List<Long> pages = new ArrayList<>();
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("efergyengage", ".csv");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".checkpoint").delete();
+    }
+
+    @Test
+    public void completedRangeIsNotImportedAgain() throws IOException {
+        run(0, 12 * HOUR);
+        assertEquals(Arrays.asList(0L, 6 * HOUR), pages);
+        pages.clear();
+        run(0, 12 * HOUR);
+        assertEquals(Arrays.<Long>asList(), pages);
+        assertEquals(2, lines().size());
+    }
+
+    @Test
+    public void changedRangeStartsOver() throws IOException {
+        run(0, 12 * HOUR);
+        pages.clear();
+        run(6 * HOUR, 18 * HOUR);
+        assertEquals(Arrays.asList(6 * HOUR, 12 * HOUR), pages);
+        assertEquals(Arrays.asList(6 * HOUR + ",1.0", 12 * HOUR + ",1.0"), lines());
+    }
+
+    @Test
+    public void openRangeKeepsItsEnd() throws IOException {
+        new EfergyEngageImporter("test", file, 0, 12 * HOUR, 0, new Reader()).run();
+        pages.clear();
+        //the range of the checkpoint is taken over rather than ending at the start of today
+        run(0, 0);
+        assertEquals(Arrays.<Long>asList(), pages);
+    }
+
+    @Test
+    public void firstVersionCheckpointStartsOver() throws IOException {
+        Files.write(new File(file.getPath() + ".checkpoint").toPath(),
+                ("" + 6 * HOUR + ",0\n").getBytes(Charset.forName("UTF-8")));
+        run(0, 12 * HOUR);
+        assertEquals(Arrays.asList(0L, 6 * HOUR), pages);
+    }
+
+    private void run(long from, long to) {
+        new EfergyEngageImporter("test", file, from, to, 0, new Reader()).run();
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+    }
+
+    /**
+     * History of one sample at the start of every page.
+     */
+    private class Reader implements EfergyEngageImporter.PageReader {
+        @Override
+        public void read(long from, long to, EfergyEngageSampleLog.Visitor visitor) {
+            pages.add(from);
+            visitor.sample(from, 1);
+        }
+    }
+}
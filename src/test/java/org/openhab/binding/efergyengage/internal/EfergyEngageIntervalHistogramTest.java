@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageIntervalHistogramTest {
+
+    private static final long INTERVAL = 1000;
+
+    private final EfergyEngageIntervalHistogram histogram = new EfergyEngageIntervalHistogram(INTERVAL, 0);
+
+    @Test
+    public void valuesAreKeptForOneMoreInterval() {
+        histogram.record(20, 100);
+        assertEquals(20, histogram.getPercentile(50, 500));
+        //the previous interval is still read along with the current one
+        histogram.record(10, 1100);
+        histogram.record(10, 1200);
+        assertEquals(10, histogram.getPercentile(50, 1500));
+        assertEquals(20, histogram.getPercentile(100, 1500));
+        assertEquals(20, histogram.getMax(1500));
+        //the first interval is gone once the second one is over
+        assertEquals(10, histogram.getPercentile(100, 2100));
+        assertEquals(10, histogram.getMax(2100));
+    }
+
+    @Test
+    public void idleIntervalsLeaveNothing() {
+        histogram.record(20, 100);
+        assertEquals(0, histogram.getPercentile(99, 5000));
+        assertEquals(0, histogram.getMax(5000));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageResponseDecoderTest {
+
+    @Test
+    public void decodesToken() throws IOException {
+        assertEquals("abc", decode(EfergyEngageResponseDecoder.TOKEN, "{\"status\":\"ok\",\"token\":\"abc\"}"));
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsFailedLogin() throws IOException {
+        decode(EfergyEngageResponseDecoder.TOKEN, "{\"status\":\"error\",\"desc\":\"bad password\"}");
+    }
+
+    @Test
+    public void decodesInstant() throws IOException {
+        EfergyEngageMeasurement measurement = decode(EfergyEngageResponseDecoder.INSTANT,
+                "{\"reading\":1234.5,\"last_reading_time\":1466000000000,\"age\":3,\"status\":\"ok\"}");
+        assertEquals(1234.5f, measurement.getValue(), 0);
+        assertEquals(1466000000000L, measurement.getMilis());
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsInstantError() throws IOException {
+        decode(EfergyEngageResponseDecoder.INSTANT, "{\"status\":\"error\",\"description\":\"no data\"}");
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsErrorWithoutStatus() throws IOException {
+        decode(EfergyEngageResponseDecoder.INSTANT, "{\"error\":{\"id\":400,\"desc\":\"bad request\"}}");
+    }
+
+    @Test(expected = EfergyEngageAuthException.class)
+    public void reportsInvalidToken() throws IOException {
+        decode(EfergyEngageResponseDecoder.INSTANT, "{\"status\":\"error\",\"desc\":\"Invalid token\"}");
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsInstantWithoutReading() throws IOException {
+        decode(EfergyEngageResponseDecoder.INSTANT, "{\"last_reading_time\":1466000000000,\"status\":\"ok\"}");
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsInstantWithNullReading() throws IOException {
+        decode(EfergyEngageResponseDecoder.INSTANT, "{\"reading\":null,\"last_reading_time\":1466000000000}");
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsInstantWithoutReadingTime() throws IOException {
+        decode(EfergyEngageResponseDecoder.INSTANT, "{\"reading\":1234.5,\"status\":\"ok\"}");
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsEmptyInstant() throws IOException {
+        decode(EfergyEngageResponseDecoder.INSTANT, "{}");
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsEnergyWithoutSum() throws IOException {
+        decode(EfergyEngageResponseDecoder.ENERGY, "{\"duration\":86400,\"units\":\"kWh\"}");
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsEnergyWithoutUnits() throws IOException {
+        decode(EfergyEngageResponseDecoder.ENERGY, "{\"sum\":\"12.34\",\"duration\":86400,\"status\":\"ok\"}");
+    }
+
+    @Test
+    public void convertsEnergyToKwh() throws IOException {
+        EfergyEngageMeasurement measurement = decode(EfergyEngageResponseDecoder.ENERGY,
+                "{\"sum\":\"2500\",\"duration\":86400,\"units\":\"Wh\"}");
+        assertEquals(2.5f, measurement.getValue(), 0);
+        assertEquals("kWh", measurement.getUnit());
+    }
+
+    @Test
+    public void decodesHistoryInSecondsAndMilliseconds() throws IOException {
+        List<EfergyEngageMeasurement> samples = decode(EfergyEngageResponseDecoder.HISTORY,
+                "{\"status\":\"ok\",\"data\":[{\"1466000000\":[100]},{\"1466000060000\":[200,1]},{\"12\":[5]}]}");
+        assertEquals(2, samples.size());
+        assertEquals(1466000000000L, samples.get(0).getMilis());
+        assertEquals(100f, samples.get(0).getValue(), 0);
+        assertEquals(1466000060000L, samples.get(1).getMilis());
+        assertEquals(200f, samples.get(1).getValue(), 0);
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsHistoryError() throws IOException {
+        decode(EfergyEngageResponseDecoder.HISTORY, "{\"data\":[],\"status\":\"error\"}");
+    }
+
+    @Test
+    public void decodesSummary() throws IOException {
+        EfergyEngageSensorTable table = decode(EfergyEngageResponseDecoder.SUMMARY,
+                "[{\"sid\":\"728\",\"cid\":\"PWER\",\"data\":[{\"1466000000000\":[100,200,300]}]},"
+                        + "{\"sid\":\"9\",\"cid\":\"TEMP\",\"data\":[{\"1466000000000\":[21]}]}]");
+        assertEquals(1, table.size());
+        assertEquals(600f, table.getValue("728", 0), 0);
+        assertEquals(200f, table.getValue("728", 2), 0);
+        assertEquals(1466000000000L, table.getTime("728"));
+    }
+
+    @Test(expected = EfergyEngageException.class)
+    public void rejectsSummaryError() throws IOException {
+        decode(EfergyEngageResponseDecoder.SUMMARY, "{\"status\":\"error\",\"desc\":\"no sensors\"}");
+    }
+
+    private static <T> T decode(EfergyEngageTransport.ResponseHandler<T> handler, String json) throws IOException {
+        return handler.handle(new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8"))));
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageSampleLogTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("efergyengage", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void fullLogDropsOldestSample() throws IOException {
+        EfergyEngageSampleLog log = new EfergyEngageSampleLog(file, 4);
+        for (int i = 1; i <= 10; i++) {
+            log.append(i, i);
+        }
+        assertEquals(Arrays.asList(7L, 8L, 9L, 10L), times(log));
+        assertEquals(10, log.getLastTime());
+        log.close();
+    }
+
+    @Test
+    public void reopenedLogKeepsSamples() throws IOException {
+        EfergyEngageSampleLog log = new EfergyEngageSampleLog(file, 4);
+        for (int i = 1; i <= 6; i++) {
+            log.append(i, i);
+        }
+        log.close();
+
+        log = new EfergyEngageSampleLog(file, 4);
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), times(log));
+        log.append(7, 7);
+        assertEquals(Arrays.asList(4L, 5L, 6L, 7L), times(log));
+        log.close();
+    }
+
+    @Test
+    public void resizedLogKeepsNewestSamples() throws IOException {
+        EfergyEngageSampleLog log = new EfergyEngageSampleLog(file, 4);
+        for (int i = 1; i <= 6; i++) {
+            log.append(i, i);
+        }
+        log.close();
+
+        log = new EfergyEngageSampleLog(file, 2);
+        assertEquals(Arrays.asList(5L, 6L), times(log));
+        log.close();
+        log = new EfergyEngageSampleLog(file, 8);
+        assertEquals(Arrays.asList(5L, 6L), times(log));
+        log.close();
+    }
+
+    @Test
+    public void migratesFirstVersion() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(0x45464745);
+            out.writeInt(1);
+            out.writeInt(4);
+            out.writeInt(3);
+            for (int i = 1; i <= 3; i++) {
+                out.writeLong(i);
+                out.writeFloat(i * 100);
+            }
+        } finally {
+            out.close();
+        }
+
+        EfergyEngageSampleLog log = new EfergyEngageSampleLog(file, 4);
+        assertEquals(Arrays.asList(1L, 2L, 3L), times(log));
+        log.close();
+    }
+
+    @Test
+    public void clearedLogStaysEmpty() throws IOException {
+        EfergyEngageSampleLog log = new EfergyEngageSampleLog(file, 4);
+        log.append(1, 1);
+        log.clear();
+        assertEquals(0, log.getLastTime());
+        log.close();
+
+        log = new EfergyEngageSampleLog(file, 4);
+        assertEquals(0, log.size());
+        log.close();
+    }
+
+    private static List<Long> times(EfergyEngageSampleLog log) {
+        final List<Long> times = new ArrayList<>();
+        log.replay(log.size(), new EfergyEngageSampleLog.Visitor() {
+            @Override
+            public void sample(long time, float watts) {
+                times.add(time);
+            }
+        });
+        return times;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageSchedulerTest {
+
+    private final EfergyEngageScheduler scheduler = new EfergyEngageScheduler(1000, 60000, 30000);
+
+    @Test
+    public void pollsAfterExpectedReading() {
+        scheduler.onReading(10000, 10500);
+        scheduler.onReading(20000, 20500);
+        //period of 10s plus the margin for the server
+        assertDueAt(32000);
+    }
+
+    @Test
+    public void missesBackOffFromLearnedPeriod() {
+        scheduler.onReading(10000, 10500);
+        scheduler.onReading(20000, 20500);
+        scheduler.onReading(20000, 32000);
+        assertDueAt(42000);
+        scheduler.onReading(20000, 42000);
+        assertDueAt(62000);
+        scheduler.onReading(20000, 62000);
+        assertDueAt(102000);
+        //capped at the longest interval
+        scheduler.onReading(20000, 102000);
+        assertDueAt(162000);
+    }
+
+    @Test
+    public void missesBackOffFromShortestIntervalWithoutPeriod() {
+        scheduler.onReading(10000, 10000);
+        scheduler.onReading(10000, 11000);
+        assertDueAt(12000);
+        scheduler.onReading(10000, 12000);
+        assertDueAt(14000);
+    }
+
+    private void assertDueAt(long time) {
+        assertFalse(scheduler.isDue(time - 1));
+        assertTrue(scheduler.isDue(time));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.efergyengage.internal;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author opecta@gmail.com
+ * @since 1.0.0-SNAPSHOT
+ */
+public class EfergyEngageTariffTest {
+
+    @Test
+    public void noSettingsNoTariff() {
+        assertNull(EfergyEngageTariff.parse(new HashMap<String, Object>()));
+    }
+
+    @Test
+    public void bandOverridesBaseRate() {
+        EfergyEngageTariff tariff = parse("0.15", "07:00-23:00=0.28", null, null);
+        assertEquals(0.15, rate(tariff, 0), 0);
+        assertEquals(0.15, rate(tariff, 6 * 60 + 59), 0);
+        assertEquals(0.28, rate(tariff, 7 * 60), 0);
+        assertEquals(0.28, rate(tariff, 22 * 60 + 59), 0);
+        assertEquals(0.15, rate(tariff, 23 * 60), 0);
+        assertEquals(7 * 60, tariff.getSegmentEnd(tariff.segment(0)));
+        assertEquals(EfergyEngageTariff.MINUTES_PER_DAY, tariff.getSegmentEnd(tariff.segment(23 * 60)));
+    }
+
+    @Test
+    public void bandWrapsAroundMidnight() {
+        EfergyEngageTariff tariff = parse("0.28", "23:00-07:00=0.12", null, null);
+        assertEquals(0.12, rate(tariff, 0), 0);
+        assertEquals(0.12, rate(tariff, 6 * 60 + 59), 0);
+        assertEquals(0.28, rate(tariff, 12 * 60), 0);
+        assertEquals(0.12, rate(tariff, 23 * 60 + 30), 0);
+    }
+
+    @Test
+    public void bandMayHaveNegativeRate() {
+        EfergyEngageTariff tariff = parse("0.15", "12:00-14:00=-0.02", null, null);
+        assertEquals(-0.02, rate(tariff, 13 * 60), 0);
+        assertEquals(0.15, rate(tariff, 14 * 60), 0);
+    }
+
+    @Test
+    public void bandUntilMidnightCoversWholeDay() {
+        EfergyEngageTariff tariff = parse("0.15", "00:00-24:00=0.28", null, null);
+        assertEquals(0.28, rate(tariff, 0), 0);
+        assertEquals(0.28, rate(tariff, 23 * 60 + 59), 0);
+        assertEquals(0.28, parse(null, "07:00-24:00=0.28", null, null).getRate(1), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBand() {
+        parse("0.15", "07:00-07:00=0.28", null, null);
+    }
+
+    @Test
+    public void tiersAddUpOncePassed() {
+        EfergyEngageTariff tariff = parse("0.15", null, "300=0.05,600=0.10", "0.40");
+        assertEquals(0, tariff.getSurcharge(300), 1e-9);
+        assertEquals(0.05, tariff.getSurcharge(300.5), 1e-9);
+        assertEquals(0.15, tariff.getSurcharge(601), 1e-9);
+        assertEquals(0.40, tariff.getStandingCharge(), 0);
+    }
+
+    @Test
+    public void equalSettingsEqualTariffs() {
+        EfergyEngageTariff tariff = parse("0.15", "07:00-23:00=0.28", "300=0.05", "0.40");
+        assertEquals(tariff, parse("0.15", " 07:00-23:00=0.28", "300=0.05", "0.4"));
+        assertEquals(tariff.hashCode(), parse("0.15", "07:00-23:00=0.28", "300=0.05", "0.40").hashCode());
+        assertNotEquals(tariff, parse("0.15", "07:00-22:00=0.28", "300=0.05", "0.40"));
+        assertNotEquals(tariff, parse("0.15", "07:00-23:00=0.28", "300=0.06", "0.40"));
+        assertNotEquals(tariff, parse("0.15", "07:00-23:00=0.28", "300=0.05", null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedBand() {
+        parse("0.15", "07:00=0.28", null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDescendingTiers() {
+        parse("0.15", null, "600=0.10,300=0.05", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTimeOutsideDay() {
+        parse("0.15", "07:00-25:00=0.28", null, null);
+    }
+
+    static EfergyEngageTariff parse(String rate, String bands, String tiers, String standingCharge) {
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("tariff.rate", rate);
+        configuration.put("tariff.bands", bands);
+        configuration.put("tariff.tiers", tiers);
+        configuration.put("tariff.standingCharge", standingCharge);
+        return EfergyEngageTariff.parse(configuration);
+    }
+
+    private static double rate(EfergyEngageTariff tariff, int minuteOfDay) {
+        return tariff.getRate(tariff.segment(minuteOfDay));
+    }
+}